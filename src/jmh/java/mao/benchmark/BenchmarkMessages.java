@@ -0,0 +1,72 @@
+package mao.benchmark;
+
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+import mao.message.Message;
+import mao.message.PingMessage;
+
+import java.util.Arrays;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.benchmark
+ * Class(类名): BenchmarkMessages
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 10:10
+ * Version(版本): 1.0
+ * Description(描述)： 基准测试用的消息，按消息类型和正文大小构造。PingMessage 没有正文，忽略正文大小
+ */
+
+public final class BenchmarkMessages
+{
+    private BenchmarkMessages()
+    {
+    }
+
+    /**
+     * 构造消息
+     *
+     * @param messageType 消息类型：PingMessage、HelloRequestMessage、HelloResponseMessage
+     * @param bodySize    正文字符数
+     * @return {@link Message}
+     */
+    public static Message create(String messageType, int bodySize)
+    {
+        switch (messageType)
+        {
+            case "PingMessage":
+                PingMessage pingMessage = new PingMessage();
+                pingMessage.setTime(System.currentTimeMillis());
+                pingMessage.setSequenceId(1);
+                return pingMessage;
+            case "HelloRequestMessage":
+                HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+                helloRequestMessage.setSequenceId(2);
+                helloRequestMessage.setName("张三");
+                helloRequestMessage.setBody(body(bodySize));
+                return helloRequestMessage;
+            case "HelloResponseMessage":
+                HelloResponseMessage helloResponseMessage = HelloResponseMessage.success(body(bodySize));
+                helloResponseMessage.setSequenceId(3);
+                return helloResponseMessage;
+            default:
+                throw new IllegalArgumentException("未知的消息类型：" + messageType);
+        }
+    }
+
+    /**
+     * 指定长度的正文
+     *
+     * @param size 字符数
+     * @return {@link String}
+     */
+    private static String body(int size)
+    {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+}
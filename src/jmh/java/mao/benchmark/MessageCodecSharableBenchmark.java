@@ -0,0 +1,97 @@
+package mao.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import mao.message.Message;
+import mao.protocol.MessageCodecSharable;
+import mao.protocol.SerializerAlgorithm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.benchmark
+ * Class(类名): MessageCodecSharableBenchmark
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 10:30
+ * Version(版本): 1.0
+ * Description(描述)： MessageCodecSharable 编码和解码的基准测试，通过 EmbeddedChannel 走一遍 pipeline，
+ * 覆盖每种序列化算法、每种消息和不同的正文大小
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecSharableBenchmark
+{
+    @Param({"Java", "Json", "Binary"})
+    public SerializerAlgorithm algorithm;
+
+    @Param({"PingMessage", "HelloRequestMessage", "HelloResponseMessage"})
+    public String messageType;
+
+    @Param({"16", "256", "2048"})
+    public int bodySize;
+
+    /**
+     * 消息
+     */
+    private Message message;
+
+    /**
+     * 编码好的一帧
+     */
+    private ByteBuf frame;
+
+    /**
+     * 编码用的 channel
+     */
+    private EmbeddedChannel encodeChannel;
+
+    /**
+     * 解码用的 channel
+     */
+    private EmbeddedChannel decodeChannel;
+
+    @Setup
+    public void setup()
+    {
+        message = BenchmarkMessages.create(messageType, bodySize);
+        encodeChannel = new EmbeddedChannel(new MessageCodecSharable(algorithm));
+        decodeChannel = new EmbeddedChannel(new MessageCodecSharable(algorithm));
+        encodeChannel.writeOutbound(message);
+        frame = encodeChannel.readOutbound();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        frame.release();
+        encodeChannel.finishAndReleaseAll();
+        decodeChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode()
+    {
+        encodeChannel.writeOutbound(message);
+        ByteBuf byteBuf = encodeChannel.readOutbound();
+        int length = byteBuf.readableBytes();
+        byteBuf.release();
+        return length;
+    }
+
+    @Benchmark
+    public Message decode()
+    {
+        decodeChannel.writeInbound(frame.retainedDuplicate());
+        return decodeChannel.readInbound();
+    }
+}
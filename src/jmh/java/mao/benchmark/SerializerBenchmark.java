@@ -0,0 +1,110 @@
+package mao.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import mao.message.Message;
+import mao.protocol.SerializerAlgorithm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.benchmark
+ * Class(类名): SerializerBenchmark
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 11:10
+ * Version(版本): 1.0
+ * Description(描述)： 序列化算法的基准测试，分别测 byte[] 方式和直接读写 ByteBuf 的方式
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark
+{
+    @Param({"Java", "Json", "Binary"})
+    public SerializerAlgorithm algorithm;
+
+    @Param({"PingMessage", "HelloRequestMessage", "HelloResponseMessage"})
+    public String messageType;
+
+    @Param({"16", "256", "2048"})
+    public int bodySize;
+
+    /**
+     * 消息
+     */
+    private Message message;
+
+    /**
+     * 消息 class
+     */
+    private Class<? extends Message> messageClass;
+
+    /**
+     * 序列化后的字节数组
+     */
+    private byte[] bytes;
+
+    /**
+     * 序列化后的 ByteBuf
+     */
+    private ByteBuf serialized;
+
+    /**
+     * 序列化的目标缓冲区，重复使用
+     */
+    private ByteBuf out;
+
+    @Setup
+    public void setup()
+    {
+        message = BenchmarkMessages.create(messageType, bodySize);
+        messageClass = message.getClass();
+        bytes = algorithm.serialize(message);
+        serialized = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        algorithm.serialize(message, serialized);
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        serialized.release();
+        out.release();
+    }
+
+    @Benchmark
+    public byte[] serializeBytes()
+    {
+        return algorithm.serialize(message);
+    }
+
+    @Benchmark
+    public Message deserializeBytes()
+    {
+        return algorithm.deserialize(messageClass, bytes);
+    }
+
+    @Benchmark
+    public int serializeByteBuf()
+    {
+        out.clear();
+        algorithm.serialize(message, out);
+        return out.writerIndex();
+    }
+
+    @Benchmark
+    public Message deserializeByteBuf()
+    {
+        serialized.readerIndex(0);
+        return algorithm.deserialize(messageClass, serialized);
+    }
+}
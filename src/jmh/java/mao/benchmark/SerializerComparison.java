@@ -0,0 +1,89 @@
+package mao.benchmark;
+
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+import mao.message.Message;
+import mao.message.PingMessage;
+import mao.protocol.SerializerAlgorithm;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.benchmark
+ * Class(类名): SerializerComparison
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/28
+ * Time(创建时间)： 14:10
+ * Version(版本): 1.0
+ * Description(描述)： 序列化算法对比，输出每种消息在每种算法下的序列化大小和每秒序列化+反序列化次数
+ * 和 JMH 基准测试一样放在 src/jmh 下，用 jmh 配置编译后直接运行 main 方法
+ */
+
+public class SerializerComparison
+{
+    /**
+     * 预热次数
+     */
+    private static final int WARMUP = 200_000;
+
+    /**
+     * 测量次数
+     */
+    private static final int ITERATIONS = 500_000;
+
+    /**
+     * 防止 JIT 消除
+     */
+    private static long sink;
+
+    public static void main(String[] args)
+    {
+        PingMessage pingMessage = new PingMessage();
+        pingMessage.setTime(System.currentTimeMillis());
+        pingMessage.setSequenceId(1);
+
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setSequenceId(2);
+        helloRequestMessage.setName("张三");
+        helloRequestMessage.setBody("hello, netty custom protocol");
+
+        HelloResponseMessage helloResponseMessage =
+                HelloResponseMessage.success("你好，张三,非常荣幸您能和我打招呼！");
+
+        Message[] messages = {pingMessage, helloRequestMessage, helloResponseMessage};
+
+        System.out.printf("%-22s %-8s %10s %16s%n", "消息", "算法", "大小(字节)", "次/秒");
+        for (Message message : messages)
+        {
+            for (SerializerAlgorithm algorithm : SerializerAlgorithm.values())
+            {
+                int size = algorithm.serialize(message).length;
+                run(algorithm, message, WARMUP);
+                long start = System.nanoTime();
+                run(algorithm, message, ITERATIONS);
+                long cost = System.nanoTime() - start;
+                System.out.printf("%-22s %-8s %10d %16.0f%n", message.getClass().getSimpleName(),
+                        algorithm, size, ITERATIONS * 1e9 / cost);
+            }
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    /**
+     * 序列化后再反序列化 n 次
+     *
+     * @param algorithm 算法
+     * @param message   消息
+     * @param n         次数
+     */
+    private static void run(SerializerAlgorithm algorithm, Message message, int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            byte[] bytes = algorithm.serialize(message);
+            Message result = algorithm.deserialize(message.getClass(), bytes);
+            sink += result.getSequenceId() + bytes.length;
+        }
+    }
+}
@@ -2,10 +2,6 @@ package mao.client;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import lombok.SneakyThrows;
@@ -15,11 +11,13 @@ import mao.message.HelloRequestMessage;
 import mao.message.HelloResponseMessage;
 import mao.message.PingMessage;
 import mao.message.PongMessage;
-import mao.protocol.MessageCodecSharable;
+import mao.protocol.ProtocolInitializer;
+import mao.transport.TransportType;
 
 import java.net.InetSocketAddress;
 import java.util.Scanner;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -42,60 +40,19 @@ public class Client
 
     public static void main(String[] args)
     {
-        NioEventLoopGroup nioEventLoopGroup = new NioEventLoopGroup(2);
+        RpcClientHandler rpcClientHandler = new RpcClientHandler();
+        long timeoutMillis = ServerConfig.getRequestTimeoutMillis();
+        TransportType transportType = TransportType.current();
+        EventLoopGroup eventLoopGroup = transportType.newEventLoopGroup(2);
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(nioEventLoopGroup)
-                .channel(NioSocketChannel.class)
-                .handler(new ChannelInitializer<NioSocketChannel>()
-                {
-                    @Override
-                    protected void initChannel(NioSocketChannel ch) throws Exception
-                    {
-
-                        ch.pipeline()
-                                .addLast(new LoggingHandler(LogLevel.DEBUG))
-                                .addLast(new MessageCodecSharable())
-                                .addLast(new SimpleChannelInboundHandler<PongMessage>()
-                                {
-                                    @Override
-                                    protected void channelRead0(ChannelHandlerContext ctx,
-                                                                PongMessage pongMessage)
-                                            throws Exception
-                                    {
-                                        try
-                                        {
-                                            log.info("得到服务器ping响应");
-                                            log.debug(pongMessage.toString());
-                                            long start = pongMessage.getTime();
-                                            long end = System.currentTimeMillis();
-                                            log.info("延时：" + (end - start) + "毫秒");
-                                        }
-                                        finally
-                                        {
-                                            LockSupport.unpark(thread);
-                                        }
-                                    }
-                                })
-                                .addLast(new SimpleChannelInboundHandler<HelloResponseMessage>()
-                                {
-                                    @Override
-                                    protected void channelRead0(ChannelHandlerContext ctx,
-                                                                HelloResponseMessage helloResponseMessage)
-                                            throws Exception
-                                    {
-                                        try
-                                        {
-                                            log.info("得到服务器打招呼响应");
-                                            log.info(helloResponseMessage.toString());
-                                        }
-                                        finally
-                                        {
-                                            LockSupport.unpark(thread);
-                                        }
-                                    }
-                                });
-                    }
-                });
+        transportType.configure(bootstrap);
+        bootstrap.group(eventLoopGroup)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, ServerConfig.getWriteBufferWaterMark())
+                //和服务端相同的 pipeline，带帧解码，同一个连接上可以同时有多个请求在途
+                .handler(ProtocolInitializer.fromConfig()
+                        .heartbeat(ServerConfig.getHeartbeatIntervalMillis(), ServerConfig.getHeartbeatTimeoutMillis())
+                        .handler(rpcClientHandler)
+                        .build());
         ChannelFuture channelFuture = bootstrap.connect(new
                 InetSocketAddress("127.0.0.1", ServerConfig.getServerPort()));
         Channel channel = channelFuture.channel();
@@ -121,7 +78,15 @@ public class Client
                         log.debug("发送ping消息");
                         PingMessage pingMessage = new PingMessage();
                         pingMessage.setTime(System.currentTimeMillis());
-                        channel.writeAndFlush(pingMessage);
+                        PongMessage pongMessage = await(rpcClientHandler.request(pingMessage, timeoutMillis));
+                        if (pongMessage != null)
+                        {
+                            log.info("得到服务器ping响应");
+                            log.debug("{}", pongMessage);
+                            long start = pongMessage.getTime();
+                            long end = System.currentTimeMillis();
+                            log.info("延时：" + (end - start) + "毫秒");
+                        }
                     }
                     else if ("2".equals(num))
                     {
@@ -134,19 +99,19 @@ public class Client
                         helloRequestMessage.setName(name);
                         helloRequestMessage.setBody(body);
                         //发送
-                        channel.writeAndFlush(helloRequestMessage);
+                        HelloResponseMessage helloResponseMessage =
+                                await(rpcClientHandler.request(helloRequestMessage, timeoutMillis));
+                        if (helloResponseMessage != null)
+                        {
+                            log.info("得到服务器打招呼响应");
+                            log.info(helloResponseMessage.toString());
+                        }
                     }
                     else if ("3".equals(num))
                     {
                         channel.close();
                         return;
                     }
-                    else
-                    {
-                        continue;
-                    }
-                    LockSupport.park();
-                    Thread.sleep(100);
                 }
             }
         }, "input");
@@ -174,9 +139,28 @@ public class Client
             public void operationComplete(Future<? super Void> future) throws Exception
             {
                 log.info("关闭客户端");
-                nioEventLoopGroup.shutdownGracefully();
+                eventLoopGroup.shutdownGracefully();
                 thread.interrupt();
             }
         });
     }
+
+    /**
+     * 等待响应，超时或失败时打印原因并返回 null
+     *
+     * @param future 响应
+     * @return {@link T}
+     */
+    private static <T> T await(CompletableFuture<T> future) throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            log.warn("请求失败：" + e.getCause());
+            return null;
+        }
+    }
 }
@@ -0,0 +1,207 @@
+package mao.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import mao.message.AbstractResponseMessage;
+import mao.message.Message;
+import mao.message.PongMessage;
+import mao.protocol.SequenceIdGenerator;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.client
+ * Class(类名): RpcClientHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/2
+ * Time(创建时间)： 10:30
+ * Version(版本): 1.0
+ * Description(描述)： 客户端请求响应关联。发送请求时分配序列号并登记一个 CompletableFuture，
+ * 服务端响应带回请求的序列号，收到后完成对应的 future，一个连接上可以同时有很多个请求在途。
+ * 超时由全局共用的时间轮检查，超时或连接断开时 future 异常完成。
+ * 加在客户端 pipeline 的最后，每个连接一个实例
+ */
+
+@Slf4j
+public class RpcClientHandler extends ChannelInboundHandlerAdapter
+{
+    /**
+     * 超时检查，所有连接共用一个时间轮
+     */
+    private static final HashedWheelTimer TIMER =
+            new HashedWheelTimer(new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    /**
+     * 在途的请求，序列号 -> future
+     */
+    private final Map<Integer, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * 连接
+     */
+    private volatile Channel channel;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+    {
+        this.channel = ctx.channel();
+    }
+
+    /**
+     * 发送请求
+     *
+     * @param request       请求消息，序列号由这里分配
+     * @param timeoutMillis 超时时间，毫秒
+     * @return {@link CompletableFuture}<{@link R}> 响应
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends Message> CompletableFuture<R> request(Message request, long timeoutMillis)
+    {
+        Channel channel = this.channel;
+        if (channel == null || !channel.isActive())
+        {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
+        }
+        int sequenceId = SequenceIdGenerator.nextId(channel);
+        request.setSequenceId(sequenceId);
+        PendingRequest pendingRequest = new PendingRequest(sequenceId);
+        pendingRequests.put(sequenceId, pendingRequest);
+        pendingRequest.timeout = TIMER.newTimeout(pendingRequest, timeoutMillis, TimeUnit.MILLISECONDS);
+        channel.writeAndFlush(request).addListener(new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception
+            {
+                if (!future.isSuccess())
+                {
+                    pendingRequests.remove(sequenceId, pendingRequest);
+                    pendingRequest.fail(future.cause());
+                }
+            }
+        });
+        return (CompletableFuture<R>) pendingRequest;
+    }
+
+    /**
+     * 在途的请求数
+     *
+     * @return int
+     */
+    public int getPendingRequests()
+    {
+        return pendingRequests.size();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        if (msg instanceof AbstractResponseMessage || msg instanceof PongMessage)
+        {
+            Message response = (Message) msg;
+            PendingRequest pendingRequest = pendingRequests.remove(response.getSequenceId());
+            if (pendingRequest != null)
+            {
+                pendingRequest.succeed(response);
+                return;
+            }
+            log.debug("没有对应请求的响应，序列号：{}", response.getSequenceId());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        //连接断开，所有在途的请求失败
+        ClosedChannelException cause = new ClosedChannelException();
+        for (Integer sequenceId : pendingRequests.keySet())
+        {
+            PendingRequest pendingRequest = pendingRequests.remove(sequenceId);
+            if (pendingRequest != null)
+            {
+                pendingRequest.fail(cause);
+            }
+        }
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 在途的请求
+     */
+    private class PendingRequest extends CompletableFuture<Message> implements TimerTask
+    {
+        /**
+         * 序列号
+         */
+        private final int sequenceId;
+
+        /**
+         * 超时任务
+         */
+        private volatile Timeout timeout;
+
+        PendingRequest(int sequenceId)
+        {
+            this.sequenceId = sequenceId;
+        }
+
+        @Override
+        public void run(Timeout timeout) throws Exception
+        {
+            pendingRequests.remove(sequenceId, this);
+            completeExceptionally(new TimeoutException("请求超时，序列号：" + sequenceId));
+        }
+
+        /**
+         * 收到响应
+         *
+         * @param response 响应
+         */
+        void succeed(Message response)
+        {
+            cancelTimeout();
+            complete(response);
+        }
+
+        /**
+         * 失败
+         *
+         * @param cause 原因
+         */
+        void fail(Throwable cause)
+        {
+            cancelTimeout();
+            completeExceptionally(cause);
+        }
+
+        /**
+         * 取消超时任务
+         */
+        private void cancelTimeout()
+        {
+            Timeout timeout = this.timeout;
+            if (timeout != null)
+            {
+                timeout.cancel();
+            }
+        }
+    }
+}
@@ -2,25 +2,22 @@ package mao.client;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.util.concurrent.Future;
-import io.netty.util.concurrent.GenericFutureListener;
-import lombok.SneakyThrows;
+import io.netty.util.concurrent.ScheduledFuture;
 import lombok.extern.slf4j.Slf4j;
 import mao.config.ServerConfig;
-import mao.message.HelloRequestMessage;
-import mao.message.HelloResponseMessage;
 import mao.message.PingMessage;
 import mao.message.PongMessage;
-import mao.protocol.MessageCodecSharable;
+import mao.protocol.ProtocolInitializer;
+import mao.transport.TransportType;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 
-import java.net.InetSocketAddress;
-import java.util.Scanner;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.locks.LockSupport;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -32,152 +29,338 @@ import java.util.concurrent.locks.LockSupport;
  * Date(创建日期)： 2023/3/26
  * Time(创建时间)： 22:39
  * Version(版本): 1.0
- * Description(描述)： 压力测试，线程多了会触发full GC ，失败品
+ * Description(描述)： 压力测试，所有连接共用一个 EventLoopGroup，发送 ping 消息，
+ * 用 System.nanoTime 计时(放在 ping 消息的 time 字段里由服务端原样带回)，用 HdrHistogram 统计延迟分布和吞吐量。
+ * 两种模式：
+ * closed：闭环，每个连接保持 depth 个请求在途，收到一个响应再发一个，测的是服务端最大吞吐量；
+ * open：开环，按 rate 的总速率匀速发送，不等响应，延迟从计划发送时间算起(不会因为发送被堵住而少算延迟)，
+ * 测的是给定负载下的延迟；出站缓冲区超过高水位线时暂停写出，欠下的请求等可写后按原计划时间补发。
+ * 参数用 key=value 的形式传入，例如：connections=100 mode=open rate=50000 duration=30
  */
 
 @Slf4j
 public class StressTestClient
 {
-    private static Thread[] threads;
-    private static Channel[] channels;
+    /**
+     * 延迟记录器，多个 I/O 线程并发记录，单位纳秒
+     */
+    private static final Recorder recorder = new Recorder(3);
 
-    public static void main(String[] args)
+    /**
+     * 是否还在发送
+     */
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception
     {
-        Scanner input = new Scanner(System.in);
-        System.out.print("线程数：");
-        int threadNumber = input.nextInt();
-        if (threadNumber <= 0)
+        Map<String, String> options = parseOptions(args);
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(ServerConfig.getServerPort())));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "10"));
+        String mode = options.getOrDefault("mode", "closed");
+        int depth = Integer.parseInt(options.getOrDefault("depth", "1"));
+        long rate = Long.parseLong(options.getOrDefault("rate", "10000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        boolean openLoop = "open".equalsIgnoreCase(mode);
+        if (connections <= 0 || depth <= 0 || rate <= 0 || duration <= 0)
+        {
+            throw new IllegalArgumentException("connections、depth、rate、duration 应该大于0");
+        }
+        //开环模式下每个连接的发送间隔
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) * connections / rate);
+
+        TransportType transportType = TransportType.current();
+        EventLoopGroup eventLoopGroup = transportType.newEventLoopGroup(threads);
+        Bootstrap bootstrap = new Bootstrap();
+        transportType.configure(bootstrap);
+        bootstrap.group(eventLoopGroup)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, ServerConfig.getWriteBufferWaterMark())
+                .handler(ProtocolInitializer.builder()
+                        .fusedDecoder(ServerConfig.isFusedDecoderEnabled())
+                        .handler(new Supplier<ChannelHandler>()
+                        {
+                            @Override
+                            public ChannelHandler get()
+                            {
+                                return openLoop ? new OpenLoopHandler(intervalNanos) : new ClosedLoopHandler(depth);
+                            }
+                        })
+                        .build());
+
+        log.info("模式：" + (openLoop ? "open，总速率 " + rate + "/s" : "closed，每个连接在途 " + depth)
+                + "，连接数：" + connections + "，I/O 线程数：" + threads);
+        List<Channel> channels = new ArrayList<>(connections);
+        try
+        {
+            for (int i = 0; i < connections; i++)
+            {
+                channels.add(bootstrap.connect(host, port).sync().channel());
+            }
+
+            //预热，丢弃预热期间的数据
+            TimeUnit.SECONDS.sleep(warmup);
+            recorder.getIntervalHistogram();
+
+            Histogram total = new Histogram(3);
+            Histogram interval = null;
+            long start = System.nanoTime();
+            for (int i = 1; i <= duration; i++)
+            {
+                TimeUnit.SECONDS.sleep(1);
+                interval = recorder.getIntervalHistogram(interval);
+                total.add(interval);
+                System.out.printf("%4d秒  吞吐量：%9d/s  p50：%9.1fus  p99：%9.1fus  max：%9.1fus%n", i,
+                        interval.getTotalCount(), micros(interval.getValueAtPercentile(50)),
+                        micros(interval.getValueAtPercentile(99)), micros(interval.getMaxValue()));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running = false;
+
+            System.out.println("-------------------------------------------");
+            System.out.printf("请求数：%d，吞吐量：%.0f/s%n", total.getTotalCount(), total.getTotalCount() / seconds);
+            System.out.printf("p50：%.1fus  p99：%.1fus  p999：%.1fus  max：%.1fus%n",
+                    micros(total.getValueAtPercentile(50)), micros(total.getValueAtPercentile(99)),
+                    micros(total.getValueAtPercentile(99.9)), micros(total.getMaxValue()));
+        }
+        finally
         {
-            threadNumber = 1;
+            running = false;
+            for (Channel channel : channels)
+            {
+                channel.close();
+            }
+            eventLoopGroup.shutdownGracefully();
         }
-        threads = new Thread[threadNumber];
-        channels = new Channel[threadNumber];
-        start(threadNumber);
     }
 
-    @SneakyThrows
-    private static void start(int threadNumber)
+    /**
+     * 解析 key=value 形式的参数
+     *
+     * @param args 参数
+     * @return {@link Map}<{@link String}, {@link String}>
+     */
+    private static Map<String, String> parseOptions(String[] args)
     {
-        CountDownLatch countDownLatch = new CountDownLatch(threadNumber);
-        for (int i = 0; i < threadNumber; i++)
-        {
-            NioEventLoopGroup nioEventLoopGroup = new NioEventLoopGroup(threadNumber);
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(nioEventLoopGroup)
-                    .channel(NioSocketChannel.class)
-                    .handler(new ChannelInitializer<NioSocketChannel>()
-                    {
-                        @Override
-                        protected void initChannel(NioSocketChannel ch) throws Exception
-                        {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args)
+        {
+            int index = arg.indexOf('=');
+            if (index <= 0)
+            {
+                throw new IllegalArgumentException("参数格式应该为 key=value：" + arg);
+            }
+            options.put(arg.substring(0, index).trim(), arg.substring(index + 1).trim());
+        }
+        return options;
+    }
+
+    /**
+     * 纳秒转微秒
+     *
+     * @param nanos 纳秒
+     * @return double
+     */
+    private static double micros(long nanos)
+    {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * 发送 ping 消息，time 字段放发送时间
+     *
+     * @param ctx       ctx
+     * @param sendNanos 发送时间
+     */
+    private static void sendPing(ChannelHandlerContext ctx, long sendNanos)
+    {
+        PingMessage pingMessage = PingMessage.newInstance();
+        pingMessage.setTime(sendNanos);
+        ctx.write(pingMessage, ctx.voidPromise());
+    }
+
+    /**
+     * 记录延迟，记录后把 pong 消息放回对象池
+     *
+     * @param pongMessage pong消息
+     */
+    private static void record(PongMessage pongMessage)
+    {
+        long latency = System.nanoTime() - pongMessage.getTime();
+        pongMessage.recycle();
+        if (latency >= 0)
+        {
+            recorder.recordValue(latency);
+        }
+    }
+
+    /**
+     * 闭环：保持 depth 个请求在途，收到一个响应再发一个
+     */
+    private static class ClosedLoopHandler extends SimpleChannelInboundHandler<PongMessage>
+    {
+        /**
+         * 在途请求数
+         */
+        private final int depth;
+
+        /**
+         * 本批读到的响应数，读完后补发同样数量的请求
+         */
+        private int received;
+
+        ClosedLoopHandler(int depth)
+        {
+            this.depth = depth;
+        }
 
-                            ch.pipeline()
-                                    .addLast(new LoggingHandler(LogLevel.WARN))
-                                    .addLast(new MessageCodecSharable())
-                                    .addLast(new SimpleChannelInboundHandler<PongMessage>()
-                                    {
-                                        @Override
-                                        protected void channelRead0(ChannelHandlerContext ctx,
-                                                                    PongMessage pongMessage)
-                                                throws Exception
-                                        {
-                                            try
-                                            {
-                                                log.info("得到服务器ping响应");
-                                                log.debug(pongMessage.toString());
-                                                long start = pongMessage.getTime();
-                                                long end = System.currentTimeMillis();
-                                                log.info("延时：" + (end - start) + "毫秒");
-                                            }
-                                            finally
-                                            {
-                                                //LockSupport.unpark(thread);
-                                            }
-                                        }
-                                    })
-                                    .addLast(new SimpleChannelInboundHandler<HelloResponseMessage>()
-                                    {
-                                        @Override
-                                        protected void channelRead0(ChannelHandlerContext ctx,
-                                                                    HelloResponseMessage helloResponseMessage)
-                                                throws Exception
-                                        {
-                                            try
-                                            {
-                                                log.info("得到服务器打招呼响应");
-                                                log.info(helloResponseMessage.toString());
-                                            }
-                                            finally
-                                            {
-                                                //LockSupport.unpark(thread);
-                                            }
-                                        }
-                                    });
-                        }
-                    });
-            ChannelFuture channelFuture = bootstrap.connect(new
-                    InetSocketAddress("127.0.0.1", ServerConfig.getServerPort()));
-            Channel channel = channelFuture.channel();
-            channels[i] = channelFuture.channel();
-
-
-            int finalI = i;
-            channelFuture.addListener(new GenericFutureListener<Future<? super Void>>()
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception
+        {
+            for (int i = 0; i < depth; i++)
             {
-                @Override
-                public void operationComplete(Future<? super Void> future) throws Exception
-                {
-                    if (future.isSuccess())
-                    {
-                        log.debug("客户端连接成功:" + finalI);
-                        countDownLatch.countDown();
-                    }
-                    else
-                    {
-                        log.error("启动失败：" + future.cause().getMessage());
-                        countDownLatch.countDown();
-                    }
-                }
-            });
+                sendPing(ctx, System.nanoTime());
+            }
+            ctx.flush();
+            ctx.fireChannelActive();
+        }
 
-            channel.closeFuture().addListener(new GenericFutureListener<Future<? super Void>>()
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, PongMessage pongMessage) throws Exception
+        {
+            record(pongMessage);
+            received++;
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception
+        {
+            if (running && received > 0)
             {
-                @Override
-                public void operationComplete(Future<? super Void> future) throws Exception
+                long now = System.nanoTime();
+                for (int i = 0; i < received; i++)
                 {
-                    log.info("关闭客户端");
-                    nioEventLoopGroup.shutdownGracefully();
+                    sendPing(ctx, now);
                 }
-            });
+                ctx.flush();
+            }
+            received = 0;
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
+        {
+            log.error("连接异常：" + cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    /**
+     * 开环：按固定速率发送，不等响应
+     */
+    private static class OpenLoopHandler extends SimpleChannelInboundHandler<PongMessage>
+    {
+        /**
+         * 发送间隔，纳秒
+         */
+        private final long intervalNanos;
+
+        /**
+         * 开始时间
+         */
+        private long startNanos;
 
+        /**
+         * 已发送的请求数
+         */
+        private long sent;
+
+        /**
+         * 定时发送任务
+         */
+        private ScheduledFuture<?> sendTask;
+
+        OpenLoopHandler(long intervalNanos)
+        {
+            this.intervalNanos = intervalNanos;
         }
 
-        for (int i = 0; i < threadNumber; i++)
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception
         {
-            int finalI = i;
-            threads[i] = new Thread(new Runnable()
+            startNanos = System.nanoTime();
+            sendTask = ctx.executor().scheduleAtFixedRate(new Runnable()
             {
-                @SneakyThrows
                 @Override
                 public void run()
                 {
-                    while (true)
-                    {
-                        log.debug("发送ping消息");
-                        PingMessage pingMessage = new PingMessage();
-                        pingMessage.setTime(System.currentTimeMillis());
-                        channels[finalI].writeAndFlush(pingMessage);
-                    }
+                    sendDue(ctx);
                 }
-            }, "input-" + (i + 1));
+            }, 0, Math.min(intervalNanos, TimeUnit.MILLISECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception
+        {
+            if (sendTask != null)
+            {
+                sendTask.cancel(false);
+            }
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+        {
+            if (ctx.channel().isWritable())
+            {
+                //恢复可写，补发欠下的请求
+                sendDue(ctx);
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
 
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, PongMessage pongMessage) throws Exception
+        {
+            record(pongMessage);
         }
 
-        countDownLatch.await();
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
+        {
+            log.error("连接异常：" + cause.getMessage());
+            ctx.close();
+        }
 
-        for (Thread thread : threads)
+        /**
+         * 发送到目前为止按计划应该发出的请求，time 字段放计划发送时间
+         *
+         * @param ctx ctx
+         */
+        private void sendDue(ChannelHandlerContext ctx)
         {
-            thread.start();
+            if (!running)
+            {
+                sendTask.cancel(false);
+                return;
+            }
+            long due = (System.nanoTime() - startNanos) / intervalNanos + 1;
+            boolean written = false;
+            while (sent < due && ctx.channel().isWritable())
+            {
+                sendPing(ctx, startNanos + sent * intervalNanos);
+                sent++;
+                written = true;
+            }
+            if (written)
+            {
+                ctx.flush();
+            }
         }
     }
 }
@@ -0,0 +1,50 @@
+package mao.config;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.config
+ * Enum(枚举名): AllocatorType
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/31
+ * Time(创建时间)： 15:10
+ * Version(版本): 1.0
+ * Description(描述)： ByteBuf 分配器类型，池化/非池化，直接内存/堆内存。
+ * 每种分配器全局只创建一个，池化分配器创建多个会各自占用内存池
+ */
+
+public enum AllocatorType
+{
+    PooledDirect(PooledByteBufAllocator.DEFAULT),
+
+    PooledHeap(new PooledByteBufAllocator(false)),
+
+    UnpooledDirect(new UnpooledByteBufAllocator(true)),
+
+    UnpooledHeap(new UnpooledByteBufAllocator(false));
+
+    /**
+     * 分配器
+     */
+    private final ByteBufAllocator allocator;
+
+    AllocatorType(ByteBufAllocator allocator)
+    {
+        this.allocator = allocator;
+    }
+
+    /**
+     * 得到分配器
+     *
+     * @return {@link ByteBufAllocator}
+     */
+    public ByteBufAllocator getAllocator()
+    {
+        return allocator;
+    }
+}
@@ -1,10 +1,35 @@
 package mao.config;
 
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import lombok.extern.slf4j.Slf4j;
+import mao.handler.BackpressurePolicy;
+import mao.protocol.CompressionAlgorithm;
+import mao.protocol.MessageCodecSharable;
+import mao.protocol.ProcotolFrameDecoder;
 import mao.protocol.SerializerAlgorithm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -17,33 +42,853 @@ import java.util.Properties;
  * Time(创建时间)： 21:18
  * Version(版本): 1.0
  * Description(描述)： 服务配置类
+ * 配置文件只在加载时解析一次，得到一个不可变的配置快照，getter 直接返回快照中的字段，编解码时不再查 Properties(加锁的 Hashtable)。
+ * 开启 config.watch.enabled 并调用 {@link #watch()} 后，配置文件修改时重新解析并整体替换快照，解析失败继续使用原来的配置。
+ * 每条消息或者每个新连接都会读取的配置(序列化、压缩、背压、批量等)重新加载后生效，端口、线程数、传输层等启动时读取的配置需要重启
  */
 
-public class ServerConfig
+@Slf4j
+public final class ServerConfig
 {
+    /**
+     * 配置文件名
+     */
+    private static final String CONFIG_FILE = "config.properties";
+
+    /**
+     * 当前的配置快照，重新加载时整体替换
+     */
+    private static volatile ServerConfig current = new ServerConfig(loadFromClasspath());
+
+    /**
+     * 配置重新加载后执行的监听器
+     */
+    private static final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 监听配置文件的线程
+     */
+    private static Thread watcher;
+
+    /**
+     * 解析前的配置
+     */
+    private final Properties properties;
+
+    //以下为解析后的配置项，含义见对应的 getter
+
+    private final boolean configWatchEnabled;
+
+    private final int serverPort;
+
+    private final String serializerName;
+
+    private final Map<Integer, String> customSerializers;
+
+    private final Map<Integer, String> messageSerializers;
+
+    private final CompressionAlgorithm compressionAlgorithm;
+
+    private final int compressionThreshold;
+
+    private final int streamChunkSize;
+
+    private final int streamFileChunkSize;
+
+    private final int streamMaxLength;
+
+    private final long heartbeatTickMillis;
+
+    private final long heartbeatIntervalMillis;
+
+    private final long heartbeatTimeoutMillis;
+
+    private final long serverIdleTimeoutMillis;
+
+    private final int workerThreads;
+
+    private final int businessThreads;
+
+    private final boolean businessVirtualThreads;
+
+    private final int businessMaxPendingTasks;
+
+    private final int soBacklog;
+
+    private final WriteBufferWaterMark writeBufferWaterMark;
+
+    private final boolean backpressureEnabled;
+
+    private final BackpressurePolicy backpressurePolicy;
+
+    private final int backpressureMaxQueuedMessages;
+
+    private final long backpressureSuspendTimeoutMillis;
+
+    private final boolean backpressurePauseRead;
+
+    private final boolean metricsEnabled;
+
+    private final boolean metricsJmxEnabled;
+
+    private final int metricsDumpIntervalSeconds;
+
+    private final boolean wireLoggingEnabled;
+
+    private final boolean messageRecycleEnabled;
+
+    private final boolean fusedDecoderEnabled;
+
+    private final boolean pingFastPathEnabled;
+
+    private final AllocatorType allocatorType;
+
+    private final RecvByteBufAllocator recvByteBufAllocator;
+
+    private final boolean flushConsolidationEnabled;
+
+    private final int flushConsolidationMaxFlushes;
+
+    private final long flushConsolidationMaxBytes;
+
+    private final long flushConsolidationMaxDelayMicros;
+
+    private final boolean batchEnabled;
+
+    private final int batchMaxMessages;
+
+    private final long requestTimeoutMillis;
+
+    private final String transportType;
+
+    private final boolean transportEdgeTriggered;
+
+    private final boolean transportReusePort;
+
+    private final int transportAcceptors;
+
+    private final boolean tcpNoDelay;
+
+    private final int socketReceiveBufferSize;
+
+    private final int socketSendBufferSize;
+
+    /**
+     * 解析配置，得到配置快照
+     *
+     * @param properties 配置
+     */
+    private ServerConfig(Properties properties)
+    {
+        this.properties = properties;
+        this.configWatchEnabled = getBoolean("config.watch.enabled", false);
+        this.serverPort = parseServerPort();
+        this.serializerName = parseSerializerName();
+        this.customSerializers = Collections.unmodifiableMap(getIntKeyed("serializer.custom."));
+        this.messageSerializers = Collections.unmodifiableMap(getIntKeyed("serializer.message."));
+        this.compressionAlgorithm = parseCompressionAlgorithm();
+        this.compressionThreshold = getInt("compression.threshold", 1024);
+        this.streamChunkSize = parseStreamChunkSize();
+        this.streamFileChunkSize = getInt("stream.file.chunk.size", streamChunkSize);
+        if (streamFileChunkSize <= 0)
+        {
+            throw new IllegalArgumentException("stream.file.chunk.size: " + streamFileChunkSize + " (应该大于0)");
+        }
+        this.streamMaxLength = getInt("stream.max.length", 16 * 1024 * 1024);
+        this.heartbeatTickMillis = getLong("heartbeat.tick.millis", 100);
+        this.heartbeatIntervalMillis = getLong("heartbeat.interval.millis", 30000);
+        this.heartbeatTimeoutMillis = getLong("heartbeat.timeout.millis", 90000);
+        this.serverIdleTimeoutMillis = getLong("server.idle.timeout.millis", 120000);
+        this.workerThreads = getInt("server.worker.threads", 0);
+        this.businessThreads = getInt("server.business.threads", 0);
+        this.businessVirtualThreads = getBoolean("server.business.virtual.threads", false);
+        this.businessMaxPendingTasks = getInt("server.business.max.pending", 10000);
+        this.soBacklog = getInt("server.so.backlog", 1024);
+        this.writeBufferWaterMark = new WriteBufferWaterMark(getInt("server.write.buffer.low.water.mark", 32 * 1024),
+                getInt("server.write.buffer.high.water.mark", 64 * 1024));
+        this.backpressureEnabled = getBoolean("backpressure.enabled", true);
+        this.backpressurePolicy = parseBackpressurePolicy();
+        this.backpressureMaxQueuedMessages = getInt("backpressure.max.queued.messages", 1024);
+        this.backpressureSuspendTimeoutMillis = getLong("backpressure.suspend.timeout.millis", 1000);
+        this.backpressurePauseRead = getBoolean("backpressure.pause.read", true);
+        this.metricsEnabled = getBoolean("metrics.enabled", true);
+        this.metricsJmxEnabled = getBoolean("metrics.jmx.enabled", true);
+        this.metricsDumpIntervalSeconds = getInt("metrics.dump.interval.seconds", 0);
+        this.wireLoggingEnabled = getBoolean("log.wire.enabled", false);
+        this.messageRecycleEnabled = getBoolean("message.recycle.enabled", true);
+        this.fusedDecoderEnabled = getBoolean("decoder.fused.enabled", true);
+        this.pingFastPathEnabled = getBoolean("ping.fast.path.enabled", true);
+        this.allocatorType = parseAllocatorType();
+        this.recvByteBufAllocator = parseRecvByteBufAllocator();
+        this.flushConsolidationEnabled = getBoolean("flush.consolidation.enabled", true);
+        this.flushConsolidationMaxFlushes = getInt("flush.consolidation.max.flushes", 256);
+        this.flushConsolidationMaxBytes = getLong("flush.consolidation.max.bytes", 64 * 1024);
+        this.flushConsolidationMaxDelayMicros = getLong("flush.consolidation.max.delay.micros", 0);
+        this.batchEnabled = getBoolean("batch.enabled", false);
+        this.batchMaxMessages = getInt("batch.max.messages", 32);
+        if (batchMaxMessages < 2)
+        {
+            throw new IllegalArgumentException("batch.max.messages: " + batchMaxMessages + " (应该大于等于2)");
+        }
+        this.requestTimeoutMillis = getLong("client.request.timeout.millis", 5000);
+        this.transportType = parseTransportType();
+        this.transportEdgeTriggered = getBoolean("transport.epoll.edge.triggered", true);
+        this.transportReusePort = getBoolean("transport.reuseport", false);
+        this.transportAcceptors = getInt("transport.acceptors", Runtime.getRuntime().availableProcessors());
+        this.tcpNoDelay = getBoolean("tcp.nodelay", true);
+        this.socketReceiveBufferSize = getInt("socket.rcvbuf", -1);
+        this.socketSendBufferSize = getInt("socket.sndbuf", -1);
+    }
+
+    /**
+     * 添加配置重新加载后执行的监听器，在监听配置文件的线程中执行
+     *
+     * @param listener 监听器
+     */
+    public static void addListener(Runnable listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * 开始监听配置文件的修改，只在配置文件是文件系统中的文件时有效(打包在 jar 中时不能修改)
+     */
+    public static synchronized void watch()
+    {
+        if (watcher != null)
+        {
+            return;
+        }
+        URL url = ServerConfig.class.getClassLoader().getResource(CONFIG_FILE);
+        if (url == null || !"file".equals(url.getProtocol()))
+        {
+            log.info("配置文件不在文件系统中，不监听修改：{}", url);
+            return;
+        }
+        Path file;
+        WatchService watchService;
+        try
+        {
+            file = Paths.get(url.toURI());
+            watchService = file.getFileSystem().newWatchService();
+            //监听目录，编辑器保存时可能是先写临时文件再改名
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        catch (IOException | URISyntaxException e)
+        {
+            log.warn("无法监听配置文件：{}", url, e);
+            return;
+        }
+        watcher = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                watchLoop(watchService, file);
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("开始监听配置文件：{}", file);
+    }
+
+    /**
+     * 等待配置文件的修改事件并重新加载
+     *
+     * @param watchService watchService
+     * @param file         配置文件
+     */
+    private static void watchLoop(WatchService watchService, Path file)
+    {
+        try
+        {
+            while (true)
+            {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                do
+                {
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (file.getFileName().equals(event.context()))
+                        {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    //一次保存可能产生多个事件，等一会儿合并成一次重新加载
+                    key = watchService.poll(100, TimeUnit.MILLISECONDS);
+                }
+                while (key != null);
+                if (changed)
+                {
+                    reload(file);
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            log.info("停止监听配置文件：{}", file);
+        }
+    }
+
+    /**
+     * 重新加载配置文件，内容没有变化或者解析失败时保留原来的配置
+     *
+     * @param file 配置文件
+     */
+    private static void reload(Path file)
+    {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file))
+        {
+            properties.load(inputStream);
+        }
+        catch (IOException e)
+        {
+            log.warn("读取配置文件失败，继续使用原来的配置：{}", file, e);
+            return;
+        }
+        if (properties.equals(current.properties))
+        {
+            return;
+        }
+        ServerConfig config;
+        try
+        {
+            config = new ServerConfig(properties);
+        }
+        catch (RuntimeException e)
+        {
+            log.warn("配置文件有误，继续使用原来的配置：{}", e.toString());
+            return;
+        }
+        current = config;
+        log.info("配置文件已重新加载：{}", file);
+        for (Runnable listener : listeners)
+        {
+            try
+            {
+                listener.run();
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("执行配置监听器失败", e);
+            }
+        }
+    }
+
+    /**
+     * 从类路径加载配置文件，没有时使用默认值
+     *
+     * @return {@link Properties}
+     */
+    private static Properties loadFromClasspath()
+    {
+        Properties properties = new Properties();
+        try (InputStream inputStream = ServerConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE))
+        {
+            if (inputStream != null)
+            {
+                properties.load(inputStream);
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return properties;
+    }
+
+    /**
+     * 是否监听配置文件的修改
+     *
+     * @return boolean
+     */
+    public static boolean isConfigWatchEnabled()
+    {
+        return current.configWatchEnabled;
+    }
+
+    /**
+     * 得到服务器端口號
+     *
+     * @return int
+     */
+    public static int getServerPort()
+    {
+        return current.serverPort;
+    }
+
+    /**
+     * 得到默认的序列化器名称，可以是内置的 Java、Json、Binary，也可以是注册的第三方序列化器
+     *
+     * @return {@link String}
+     */
+    public static String getSerializerName()
+    {
+        return current.serializerName;
+    }
+
+    /**
+     * 第三方序列化器，配置为 serializer.custom.id=类名
+     *
+     * @return {@link Map}<{@link Integer}, {@link String}> 序列化器 id -> 类名
+     */
+    public static Map<Integer, String> getCustomSerializers()
+    {
+        return current.customSerializers;
+    }
+
+    /**
+     * 单独指定了序列化器的消息类型，配置为 serializer.message.消息类型=序列化器名称
+     *
+     * @return {@link Map}<{@link Integer}, {@link String}> 消息类型 -> 序列化器名称
+     */
+    public static Map<Integer, String> getMessageSerializers()
+    {
+        return current.messageSerializers;
+    }
+
+    /**
+     * 消息正文的压缩算法，默认不压缩
+     *
+     * @return {@link CompressionAlgorithm}
+     */
+    public static CompressionAlgorithm getCompressionAlgorithm()
+    {
+        return current.compressionAlgorithm;
+    }
+
+    /**
+     * 正文达到多少字节才压缩，太小的正文压缩后往往不会变小
+     *
+     * @return int
+     */
+    public static int getCompressionThreshold()
+    {
+        return current.compressionThreshold;
+    }
+
+    /**
+     * 每帧最多携带的正文字节数，超过的正文拆成多个续帧发送。
+     * 默认按对端默认的最大帧长度计算，不需要为了大消息调大所有连接的帧长度限制
+     *
+     * @return int
+     */
+    public static int getStreamChunkSize()
+    {
+        return current.streamChunkSize;
+    }
+
+    /**
+     * 文件流每帧携带的字节数，也就是每个 FileRegion 的大小。
+     * 默认和 stream.chunk.size 相同；对端调大了最大帧长度时可以一起调大，每次 sendfile 发送得越多越好
+     *
+     * @return int
+     */
+    public static int getStreamFileChunkSize()
+    {
+        return current.streamFileChunkSize;
+    }
+
+    /**
+     * 续帧拼接后的正文最大长度，超过时认为数据有误
+     *
+     * @return int
+     */
+    public static int getStreamMaxLength()
+    {
+        return current.streamMaxLength;
+    }
+
+    /**
+     * 心跳时间轮的刻度，毫秒，启动时读取一次
+     *
+     * @return long
+     */
+    public static long getHeartbeatTickMillis()
+    {
+        return current.heartbeatTickMillis;
+    }
+
+    /**
+     * 客户端写空闲多久发送心跳，毫秒，0 表示不发送
+     *
+     * @return long
+     */
+    public static long getHeartbeatIntervalMillis()
+    {
+        return current.heartbeatIntervalMillis;
+    }
+
+    /**
+     * 客户端多久没有收到数据就认为服务端失效并关闭连接，毫秒，0 表示不检测
+     *
+     * @return long
+     */
+    public static long getHeartbeatTimeoutMillis()
+    {
+        return current.heartbeatTimeoutMillis;
+    }
+
+    /**
+     * 服务端多久没有收到数据就关闭连接，毫秒，0 表示不关闭；应该大于客户端的心跳间隔
+     *
+     * @return long
+     */
+    public static long getServerIdleTimeoutMillis()
+    {
+        return current.serverIdleTimeoutMillis;
+    }
+
+    /**
+     * worker(I/O)线程数，0 表示 netty 默认(cpu核数*2)
+     *
+     * @return int
+     */
+    public static int getWorkerThreads()
+    {
+        return current.workerThreads;
+    }
+
+    /**
+     * 业务线程数，业务处理器在单独的线程池中执行，0 表示直接在 I/O 线程中执行
+     *
+     * @return int
+     */
+    public static int getBusinessThreads()
+    {
+        return current.businessThreads;
+    }
+
+    /**
+     * 业务线程池是否使用虚拟线程，需要 JDK 21 及以上，不支持时退回普通线程池
+     *
+     * @return boolean
+     */
+    public static boolean isBusinessVirtualThreads()
+    {
+        return current.businessVirtualThreads;
+    }
+
+    /**
+     * 业务线程池最多排队的任务数，超过后拒绝新消息
+     *
+     * @return int
+     */
+    public static int getBusinessMaxPendingTasks()
+    {
+        return current.businessMaxPendingTasks;
+    }
+
+    /**
+     * SO_BACKLOG，等待 accept 的连接队列长度
+     *
+     * @return int
+     */
+    public static int getSoBacklog()
+    {
+        return current.soBacklog;
+    }
+
+    /**
+     * 出站缓冲区的高低水位线，超过高水位线 channel 变为不可写，低于低水位线恢复可写
+     *
+     * @return {@link WriteBufferWaterMark}
+     */
+    public static WriteBufferWaterMark getWriteBufferWaterMark()
+    {
+        return current.writeBufferWaterMark;
+    }
+
+    /**
+     * 是否开启出站背压
+     *
+     * @return boolean
+     */
+    public static boolean isBackpressureEnabled()
+    {
+        return current.backpressureEnabled;
+    }
+
+    /**
+     * 出站缓冲区不可写时的处理策略
+     *
+     * @return {@link BackpressurePolicy}
+     */
+    public static BackpressurePolicy getBackpressurePolicy()
+    {
+        return current.backpressurePolicy;
+    }
+
+    /**
+     * 不可写时每个连接最多排队的消息数
+     *
+     * @return int
+     */
+    public static int getBackpressureMaxQueuedMessages()
+    {
+        return current.backpressureMaxQueuedMessages;
+    }
 
-    private static Properties properties;
+    /**
+     * Suspend 策略下业务线程等待可写的最长时间，毫秒
+     *
+     * @return long
+     */
+    public static long getBackpressureSuspendTimeoutMillis()
+    {
+        return current.backpressureSuspendTimeoutMillis;
+    }
 
-    static
+    /**
+     * 不可写时是否暂停读取这个连接
+     *
+     * @return boolean
+     */
+    public static boolean isBackpressurePauseRead()
     {
-        try (InputStream inputStream =
-                     ServerConfig.class.getClassLoader().getResourceAsStream("config.properties"))
-        {
-            properties = new Properties();
-            properties.load(inputStream);
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        return current.backpressurePauseRead;
     }
 
     /**
-     * 得到服务器端口號
+     * 是否开启协议指标统计
+     *
+     * @return boolean
+     */
+    public static boolean isMetricsEnabled()
+    {
+        return current.metricsEnabled;
+    }
+
+    /**
+     * 是否把协议指标注册到 JMX
+     *
+     * @return boolean
+     */
+    public static boolean isMetricsJmxEnabled()
+    {
+        return current.metricsJmxEnabled;
+    }
+
+    /**
+     * 定时把协议指标输出到日志的间隔，秒，0 表示不输出
      *
      * @return int
      */
-    public static int getServerPort()
+    public static int getMetricsDumpIntervalSeconds()
+    {
+        return current.metricsDumpIntervalSeconds;
+    }
+
+    /**
+     * 是否在 pipeline 中加入 LoggingHandler，输出每个缓冲区的十六进制内容，只用于调试
+     *
+     * @return boolean
+     */
+    public static boolean isWireLoggingEnabled()
+    {
+        return current.wireLoggingEnabled;
+    }
+
+    /**
+     * ping、pong 消息是否使用对象池，启动时读取
+     *
+     * @return boolean
+     */
+    public static boolean isMessageRecycleEnabled()
+    {
+        return current.messageRecycleEnabled;
+    }
+
+    /**
+     * 是否使用帧和消息合在一起的解码器({@link mao.protocol.MessageFrameDecoder})
+     *
+     * @return boolean
+     */
+    public static boolean isFusedDecoderEnabled()
+    {
+        return current.fusedDecoderEnabled;
+    }
+
+    /**
+     * 是否在编解码器中直接把 ping 帧改成 pong 帧写回，不反序列化(序列化器支持时)
+     *
+     * @return boolean
+     */
+    public static boolean isPingFastPathEnabled()
+    {
+        return current.pingFastPathEnabled;
+    }
+
+    /**
+     * ByteBuf 分配器类型
+     *
+     * @return {@link AllocatorType}
+     */
+    public static AllocatorType getAllocatorType()
+    {
+        return current.allocatorType;
+    }
+
+    /**
+     * 接收缓冲区分配器，adaptive 根据每次读到的字节数自动调整大小，fixed 固定大小
+     *
+     * @return {@link RecvByteBufAllocator}
+     */
+    public static RecvByteBufAllocator getRecvByteBufAllocator()
+    {
+        return current.recvByteBufAllocator;
+    }
+
+    /**
+     * 是否合并 flush
+     *
+     * @return boolean
+     */
+    public static boolean isFlushConsolidationEnabled()
+    {
+        return current.flushConsolidationEnabled;
+    }
+
+    /**
+     * 合并 flush 时最多攒多少次 flush
+     *
+     * @return int
+     */
+    public static int getFlushConsolidationMaxFlushes()
+    {
+        return current.flushConsolidationMaxFlushes;
+    }
+
+    /**
+     * 合并 flush 时最多攒多少字节
+     *
+     * @return long
+     */
+    public static long getFlushConsolidationMaxBytes()
+    {
+        return current.flushConsolidationMaxBytes;
+    }
+
+    /**
+     * 合并 flush 时，不在读的过程中的 flush 最多延迟多少微秒，0 表示立即 flush
+     *
+     * @return long
+     */
+    public static long getFlushConsolidationMaxDelayMicros()
+    {
+        return current.flushConsolidationMaxDelayMicros;
+    }
+
+    /**
+     * 是否把两次 flush 之间写入的多条消息打包成批量消息发送，需要对端也支持批量消息
+     *
+     * @return boolean
+     */
+    public static boolean isBatchEnabled()
+    {
+        return current.batchEnabled;
+    }
+
+    /**
+     * 一个批量消息最多包含的消息条数
+     *
+     * @return int
+     */
+    public static int getBatchMaxMessages()
+    {
+        return current.batchMaxMessages;
+    }
+
+    /**
+     * 客户端请求的超时时间，毫秒
+     *
+     * @return long
+     */
+    public static long getRequestTimeoutMillis()
+    {
+        return current.requestTimeoutMillis;
+    }
+
+    /**
+     * 传输层类型：auto、epoll、nio
+     *
+     * @return {@link String}
+     */
+    public static String getTransportType()
+    {
+        return current.transportType;
+    }
+
+    /**
+     * epoll 是否使用边缘触发
+     *
+     * @return boolean
+     */
+    public static boolean isTransportEdgeTriggered()
+    {
+        return current.transportEdgeTriggered;
+    }
+
+    /**
+     * epoll 是否开启 SO_REUSEPORT
+     *
+     * @return boolean
+     */
+    public static boolean isTransportReusePort()
+    {
+        return current.transportReusePort;
+    }
+
+    /**
+     * 开启 SO_REUSEPORT 时监听 socket 的个数
+     *
+     * @return int
+     */
+    public static int getTransportAcceptors()
+    {
+        return current.transportAcceptors;
+    }
+
+    /**
+     * 是否开启 TCP_NODELAY
+     *
+     * @return boolean
+     */
+    public static boolean isTcpNoDelay()
+    {
+        return current.tcpNoDelay;
+    }
+
+    /**
+     * SO_RCVBUF，小于等于0表示使用系统默认值
+     *
+     * @return int
+     */
+    public static int getSocketReceiveBufferSize()
+    {
+        return current.socketReceiveBufferSize;
+    }
+
+    /**
+     * SO_SNDBUF，小于等于0表示使用系统默认值
+     *
+     * @return int
+     */
+    public static int getSocketSendBufferSize()
+    {
+        return current.socketSendBufferSize;
+    }
+
+    /**
+     * 解析服务器端口號
+     *
+     * @return int
+     */
+    private int parseServerPort()
     {
         String value = properties.getProperty("server.port");
         if (value == null)
@@ -57,20 +902,183 @@ public class ServerConfig
     }
 
     /**
-     * 得到序列化器算法
+     * 解析默认的序列化器名称，可以是内置的 Java、Json、Binary，也可以是注册的第三方序列化器
      *
-     * @return {@link SerializerAlgorithm}
+     * @return {@link String}
      */
-    public static SerializerAlgorithm getSerializerAlgorithm()
+    private String parseSerializerName()
     {
         String value = properties.getProperty("serializer.algorithm");
         if (value == null)
         {
-            return SerializerAlgorithm.Java;
+            return SerializerAlgorithm.Java.name();
+        }
+        else
+        {
+            return value.trim();
+        }
+    }
+
+    /**
+     * 解析消息正文的压缩算法，默认不压缩
+     *
+     * @return {@link CompressionAlgorithm}
+     */
+    private CompressionAlgorithm parseCompressionAlgorithm()
+    {
+        String value = properties.getProperty("compression.algorithm");
+        if (value == null)
+        {
+            return CompressionAlgorithm.None;
+        }
+        else
+        {
+            return CompressionAlgorithm.valueOf(value.trim());
+        }
+    }
+
+    /**
+     * 解析每帧最多携带的正文字节数，默认为默认的最大帧长度减去消息头长度
+     *
+     * @return int
+     */
+    private int parseStreamChunkSize()
+    {
+        int chunkSize = getInt("stream.chunk.size",
+                ProcotolFrameDecoder.DEFAULT_MAX_FRAME_LENGTH - MessageCodecSharable.HEADER_LENGTH);
+        if (chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("stream.chunk.size: " + chunkSize + " (应该大于0)");
+        }
+        return chunkSize;
+    }
+
+    /**
+     * 解析出站缓冲区不可写时的处理策略
+     *
+     * @return {@link BackpressurePolicy}
+     */
+    private BackpressurePolicy parseBackpressurePolicy()
+    {
+        String value = properties.getProperty("backpressure.policy");
+        if (value == null)
+        {
+            return BackpressurePolicy.Queue;
+        }
+        else
+        {
+            return BackpressurePolicy.valueOf(value.trim());
+        }
+    }
+
+    /**
+     * 解析 ByteBuf 分配器类型
+     *
+     * @return {@link AllocatorType}
+     */
+    private AllocatorType parseAllocatorType()
+    {
+        String value = properties.getProperty("server.allocator");
+        if (value == null)
+        {
+            return AllocatorType.PooledDirect;
+        }
+        else
+        {
+            return AllocatorType.valueOf(value.trim());
+        }
+    }
+
+    /**
+     * 解析接收缓冲区分配器，adaptive 根据每次读到的字节数自动调整大小，fixed 固定大小
+     *
+     * @return {@link RecvByteBufAllocator}
+     */
+    private RecvByteBufAllocator parseRecvByteBufAllocator()
+    {
+        String value = properties.getProperty("server.rcvbuf.allocator");
+        if (value == null || "adaptive".equalsIgnoreCase(value.trim()))
+        {
+            return new AdaptiveRecvByteBufAllocator(getInt("server.rcvbuf.allocator.min", 64),
+                    getInt("server.rcvbuf.allocator.initial", 1024),
+                    getInt("server.rcvbuf.allocator.max", 65536));
+        }
+        else if ("fixed".equalsIgnoreCase(value.trim()))
+        {
+            return new FixedRecvByteBufAllocator(getInt("server.rcvbuf.allocator.initial", 1024));
         }
         else
         {
-            return SerializerAlgorithm.valueOf(value);
+            throw new IllegalArgumentException("未知的接收缓冲区分配器：" + value);
+        }
+    }
+
+    /**
+     * 解析传输层类型：auto、epoll、nio
+     *
+     * @return {@link String}
+     */
+    private String parseTransportType()
+    {
+        String value = properties.getProperty("transport.type");
+        return value == null ? "auto" : value.trim();
+    }
+
+    /**
+     * 得到以 prefix 开头、后缀为整数的配置项
+     *
+     * @param prefix 前缀
+     * @return {@link Map}<{@link Integer}, {@link String}> 后缀 -> 值
+     */
+    private Map<Integer, String> getIntKeyed(String prefix)
+    {
+        Map<Integer, String> map = new TreeMap<>();
+        for (String key : properties.stringPropertyNames())
+        {
+            if (key.startsWith(prefix))
+            {
+                map.put(Integer.parseInt(key.substring(prefix.length()).trim()), properties.getProperty(key).trim());
+            }
         }
+        return map;
+    }
+
+    /**
+     * 得到 int 配置
+     *
+     * @param key          键
+     * @param defaultValue 默认值
+     * @return int
+     */
+    private int getInt(String key, int defaultValue)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * 得到 long 配置
+     *
+     * @param key          键
+     * @param defaultValue 默认值
+     * @return long
+     */
+    private long getLong(String key, long defaultValue)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * 得到 boolean 配置
+     *
+     * @param key          键
+     * @param defaultValue 默认值
+     * @return boolean
+     */
+    private boolean getBoolean(String key, boolean defaultValue)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
     }
 }
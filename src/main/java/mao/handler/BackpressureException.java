@@ -0,0 +1,22 @@
+package mao.handler;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BackpressureException
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 14:05
+ * Version(版本): 1.0
+ * Description(描述)： 出站缓冲区已满，写入被拒绝或者等待可写超时
+ */
+
+public class BackpressureException extends RuntimeException
+{
+    public BackpressureException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,388 @@
+package mao.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundInvoker;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BackpressureHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 14:10
+ * Version(版本): 1.0
+ * Description(描述)： 出站背压。出站缓冲区超过高水位线后 channel 不可写，这时新的写入按 {@link BackpressurePolicy} 排队或者拒绝，
+ * 不让对端读得慢时出站缓冲区无限增长；可写后按顺序写出排队的消息。
+ * 开启暂停读取时，不可写期间关闭 autoRead，不再读这个连接的请求，可写后恢复。
+ * 业务线程发送时用 {@link #writeAndFlush}，Suspend 策略下会等待可写。
+ * 业务线程的写入用普通任务交给 I/O 线程，不用 netty 的写任务：netty 会把还没执行的写任务的估算大小计入待写字节，
+ * 业务线程提交得快时 channel 会因为事件循环的积压(而不是对端读得慢)变成不可写，这些写入执行时又被排队甚至拒绝。
+ * 这里单独统计业务线程提交了但还没执行的写入，channel 真正不可写时在提交时就按上限拒绝，不创建任务
+ * 加在编解码器之后(靠近 tail)，每个连接一个实例
+ */
+
+@Slf4j
+public class BackpressureHandler extends ChannelDuplexHandler
+{
+    /**
+     * channel 属性，业务线程通过它找到处理器
+     */
+    private static final AttributeKey<BackpressureHandler> KEY = AttributeKey.valueOf("backpressureHandler");
+
+    /**
+     * 策略
+     */
+    private final BackpressurePolicy policy;
+
+    /**
+     * 最多排队的消息数
+     */
+    private final int maxQueuedMessages;
+
+    /**
+     * Suspend 策略下等待可写的最长时间，纳秒
+     */
+    private final long suspendTimeoutNanos;
+
+    /**
+     * 不可写时是否暂停读取
+     */
+    private final boolean pauseRead;
+
+    /**
+     * 排队的消息，只在 I/O 线程中访问
+     */
+    private final ArrayDeque<PendingWrite> queue = new ArrayDeque<>();
+
+    /**
+     * 排队的消息数，业务线程提交时读取
+     */
+    private volatile int queuedMessages;
+
+    /**
+     * 业务线程已经提交、还没在 I/O 线程中执行的写入数
+     */
+    private final AtomicInteger submittedWrites = new AtomicInteger();
+
+    /**
+     * 排队期间是否有 flush
+     */
+    private boolean flushPending;
+
+    /**
+     * 等待可写的业务线程在这个锁上等待
+     */
+    private final Object writableLock = new Object();
+
+    /**
+     * 出站背压
+     *
+     * @param policy               策略
+     * @param maxQueuedMessages    最多排队的消息数
+     * @param suspendTimeoutMillis Suspend 策略下等待可写的最长时间，毫秒
+     * @param pauseRead            不可写时是否暂停读取
+     */
+    public BackpressureHandler(BackpressurePolicy policy, int maxQueuedMessages, long suspendTimeoutMillis,
+                               boolean pauseRead)
+    {
+        if (maxQueuedMessages < 0)
+        {
+            throw new IllegalArgumentException("maxQueuedMessages: " + maxQueuedMessages + " (应该大于等于0)");
+        }
+        this.policy = policy;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.suspendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, suspendTimeoutMillis));
+        this.pauseRead = pauseRead;
+    }
+
+    /**
+     * 发送并 flush。在业务线程中调用时：Suspend 策略先等待 channel 可写，超时返回失败的 future；
+     * Queue 和 Reject 策略在 channel 不可写、排队和提交中的写入已经达到上限(Reject 为 0)时直接返回失败的 future。
+     * 在 I/O 线程中调用时直接写，由处理器排队或者拒绝
+     *
+     * @param ctx 从哪个 ctx 开始写
+     * @param msg 消息
+     * @return {@link ChannelFuture}
+     */
+    public static ChannelFuture writeAndFlush(ChannelHandlerContext ctx, Object msg)
+    {
+        return writeAndFlush(ctx.channel(), ctx, msg);
+    }
+
+    /**
+     * 发送并 flush，从 pipeline 的尾部开始写
+     *
+     * @param channel channel
+     * @param msg     消息
+     * @return {@link ChannelFuture}
+     */
+    public static ChannelFuture writeAndFlush(Channel channel, Object msg)
+    {
+        return writeAndFlush(channel, channel, msg);
+    }
+
+    /**
+     * 发送并 flush
+     *
+     * @param channel channel
+     * @param invoker 从哪里开始写
+     * @param msg     消息
+     * @return {@link ChannelFuture}
+     */
+    private static ChannelFuture writeAndFlush(Channel channel, ChannelOutboundInvoker invoker, Object msg)
+    {
+        BackpressureHandler handler = channel.attr(KEY).get();
+        if (handler == null || channel.eventLoop().inEventLoop())
+        {
+            return invoker.writeAndFlush(msg);
+        }
+        if (!channel.isWritable())
+        {
+            if (handler.policy == BackpressurePolicy.Suspend)
+            {
+                try
+                {
+                    if (!handler.awaitWritable(channel))
+                    {
+                        ReferenceCountUtil.release(msg);
+                        return invoker.newFailedFuture(new BackpressureException("等待 channel 可写超时"));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    ReferenceCountUtil.release(msg);
+                    return invoker.newFailedFuture(e);
+                }
+            }
+            else if (handler.policy == BackpressurePolicy.Reject
+                    || handler.queuedMessages + handler.submittedWrites.get() >= handler.maxQueuedMessages)
+            {
+                log.debug("出站缓冲区已满，拒绝写入：{}", channel);
+                ReferenceCountUtil.release(msg);
+                return invoker.newFailedFuture(new BackpressureException("出站缓冲区已满"));
+            }
+        }
+        return handler.submit(channel, invoker, msg);
+    }
+
+    /**
+     * 把业务线程的写入作为普通任务交给 I/O 线程，不计入 channel 的待写字节
+     *
+     * @param channel channel
+     * @param invoker 从哪里开始写
+     * @param msg     消息
+     * @return {@link ChannelFuture}
+     */
+    private ChannelFuture submit(Channel channel, final ChannelOutboundInvoker invoker, final Object msg)
+    {
+        final ChannelPromise promise = channel.newPromise();
+        submittedWrites.incrementAndGet();
+        try
+        {
+            channel.eventLoop().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    submittedWrites.decrementAndGet();
+                    invoker.writeAndFlush(msg, promise);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            //事件循环已经关闭
+            submittedWrites.decrementAndGet();
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(e);
+        }
+        return promise;
+    }
+
+    /**
+     * 等待 channel 可写或者关闭
+     *
+     * @param channel channel
+     * @return boolean 超时返回 false
+     * @throws InterruptedException 中断
+     */
+    private boolean awaitWritable(Channel channel) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + suspendTimeoutNanos;
+        synchronized (writableLock)
+        {
+            while (!channel.isWritable() && channel.isActive())
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(writableLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 唤醒等待可写的业务线程
+     */
+    private void signalWritable()
+    {
+        if (policy == BackpressurePolicy.Suspend)
+        {
+            synchronized (writableLock)
+            {
+                writableLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+    {
+        ctx.channel().attr(KEY).set(this);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception
+    {
+        ctx.channel().attr(KEY).set(null);
+        failQueued(new ClosedChannelException());
+        signalWritable();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+    {
+        if (queue.isEmpty() && ctx.channel().isWritable())
+        {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (policy == BackpressurePolicy.Reject || queue.size() >= maxQueuedMessages)
+        {
+            log.debug("出站缓冲区已满，拒绝写入：{}", ctx.channel());
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(new BackpressureException("出站缓冲区已满"));
+            return;
+        }
+        //保证顺序，队列不为空时后来的写入也要排队
+        queue.add(new PendingWrite(msg, promise));
+        queuedMessages = queue.size();
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception
+    {
+        if (!queue.isEmpty())
+        {
+            flushPending = true;
+        }
+        //出站缓冲区里已有的数据照常 flush，这样才能恢复可写
+        ctx.flush();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+    {
+        if (ctx.channel().isWritable())
+        {
+            drain(ctx);
+            if (pauseRead && ctx.channel().isWritable() && !ctx.channel().config().isAutoRead())
+            {
+                log.debug("channel 恢复可写，继续读取：{}", ctx.channel());
+                ctx.channel().config().setAutoRead(true);
+            }
+            signalWritable();
+        }
+        else if (pauseRead && ctx.channel().config().isAutoRead())
+        {
+            //响应写不出去，先不读新的请求
+            log.debug("channel 不可写，暂停读取：{}", ctx.channel());
+            ctx.channel().config().setAutoRead(false);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        failQueued(new ClosedChannelException());
+        signalWritable();
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 按顺序写出排队的消息，直到队列为空或者再次不可写
+     *
+     * @param ctx ctx
+     */
+    private void drain(ChannelHandlerContext ctx)
+    {
+        if (queue.isEmpty())
+        {
+            return;
+        }
+        while (!queue.isEmpty() && ctx.channel().isWritable())
+        {
+            PendingWrite pendingWrite = queue.poll();
+            ctx.write(pendingWrite.msg, pendingWrite.promise);
+        }
+        queuedMessages = queue.size();
+        if (flushPending)
+        {
+            flushPending = !queue.isEmpty();
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 排队的消息全部失败
+     *
+     * @param cause 原因
+     */
+    private void failQueued(Throwable cause)
+    {
+        PendingWrite pendingWrite;
+        while ((pendingWrite = queue.poll()) != null)
+        {
+            ReferenceCountUtil.release(pendingWrite.msg);
+            pendingWrite.promise.tryFailure(cause);
+        }
+        queuedMessages = 0;
+        flushPending = false;
+    }
+
+    /**
+     * 排队的写入
+     */
+    private static final class PendingWrite
+    {
+        private final Object msg;
+
+        private final ChannelPromise promise;
+
+        PendingWrite(Object msg, ChannelPromise promise)
+        {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
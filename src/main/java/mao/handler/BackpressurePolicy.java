@@ -0,0 +1,33 @@
+package mao.handler;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BackpressurePolicy
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/3
+ * Time(创建时间)： 14:00
+ * Version(版本): 1.0
+ * Description(描述)： 出站缓冲区超过高水位线(channel 不可写)时对新写入的处理方式
+ */
+
+public enum BackpressurePolicy
+{
+    /**
+     * 业务线程通过 {@link BackpressureHandler#writeAndFlush} 发送时等待 channel 可写，超时后失败；
+     * I/O 线程中不能等待，按 Queue 处理
+     */
+    Suspend,
+
+    /**
+     * 放入有界队列，channel 可写后按顺序写出，队列满了拒绝
+     */
+    Queue,
+
+    /**
+     * 直接拒绝
+     */
+    Reject
+}
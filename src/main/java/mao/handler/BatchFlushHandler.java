@@ -0,0 +1,235 @@
+package mao.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BatchFlushHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/29
+ * Time(创建时间)： 15:20
+ * Version(版本): 1.0
+ * Description(描述)： 合并 flush。业务处理器每条消息都 writeAndFlush，每次 flush 都是一次系统调用。
+ * 读事件处理过程中的 flush 先攒着，到本批读完(channelReadComplete)时统一 flush；
+ * 攒的 flush 次数或字节数达到阈值时提前 flush；
+ * 不在读的过程中(例如业务线程发起的写)，如果配置了最大延迟，则最多延迟这么久后统一 flush，否则立即 flush。
+ * 需要加在 pipeline 靠近 head 的位置，每个连接一个实例
+ */
+
+public class BatchFlushHandler extends ChannelDuplexHandler
+{
+    /**
+     * 最多攒多少次 flush
+     */
+    private final int maxFlushes;
+
+    /**
+     * 最多攒多少字节
+     */
+    private final long maxBytes;
+
+    /**
+     * 不在读的过程中时，flush 最多延迟的纳秒数，0 表示立即 flush
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * 是否正在读
+     */
+    private boolean readInProgress;
+
+    /**
+     * 攒下的 flush 次数
+     */
+    private int pendingFlushes;
+
+    /**
+     * 自上次 flush 以来写入的字节数
+     */
+    private long pendingBytes;
+
+    /**
+     * 延迟 flush 任务
+     */
+    private Future<?> scheduledFlush;
+
+    /**
+     * ctx
+     */
+    private ChannelHandlerContext ctx;
+
+    /**
+     * 延迟 flush 任务
+     */
+    private final Runnable flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            scheduledFlush = null;
+            if (pendingFlushes > 0)
+            {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    /**
+     * 合并 flush
+     *
+     * @param maxFlushes     最多攒多少次 flush
+     * @param maxBytes       最多攒多少字节
+     * @param maxDelayMicros 不在读的过程中时，flush 最多延迟的微秒数，0 表示立即 flush
+     */
+    public BatchFlushHandler(int maxFlushes, long maxBytes, long maxDelayMicros)
+    {
+        if (maxFlushes <= 0)
+        {
+            throw new IllegalArgumentException("maxFlushes: " + maxFlushes + " (应该大于0)");
+        }
+        this.maxFlushes = maxFlushes;
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxDelayMicros));
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+    {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception
+    {
+        flushIfNeeded(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+    {
+        if (msg instanceof ByteBuf)
+        {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        }
+        else if (msg instanceof ByteBufHolder)
+        {
+            pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+        }
+        else if (msg instanceof FileRegion)
+        {
+            pendingBytes += ((FileRegion) msg).count();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception
+    {
+        if (!readInProgress && maxDelayNanos == 0)
+        {
+            flushNow(ctx);
+            return;
+        }
+        if (++pendingFlushes >= maxFlushes || pendingBytes >= maxBytes)
+        {
+            flushNow(ctx);
+            return;
+        }
+        if (!readInProgress && scheduledFlush == null)
+        {
+            scheduledFlush = ctx.executor().schedule(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception
+    {
+        //一批读完，统一 flush
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+    {
+        if (!ctx.channel().isWritable())
+        {
+            //出站缓冲区满了，尽快把攒着的数据写出去
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
+    {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception
+    {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception
+    {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    /**
+     * 有攒着的 flush 才 flush
+     *
+     * @param ctx ctx
+     */
+    private void flushIfNeeded(ChannelHandlerContext ctx)
+    {
+        if (pendingFlushes > 0)
+        {
+            flushNow(ctx);
+        }
+    }
+
+    /**
+     * 立即 flush
+     *
+     * @param ctx ctx
+     */
+    private void flushNow(ChannelHandlerContext ctx)
+    {
+        if (scheduledFlush != null)
+        {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pendingFlushes = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+}
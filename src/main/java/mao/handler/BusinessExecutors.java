@@ -0,0 +1,54 @@
+package mao.handler;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BusinessExecutors
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/1
+ * Time(创建时间)： 14:30
+ * Version(版本): 1.0
+ * Description(描述)： 创建业务线程池。JDK 21 及以上可以使用虚拟线程，每个任务一个虚拟线程；
+ * 项目按 JDK 16 编译，所以通过反射调用，不支持时退回固定大小的线程池
+ */
+
+@Slf4j
+public final class BusinessExecutors
+{
+    private BusinessExecutors()
+    {
+    }
+
+    /**
+     * 创建业务线程池
+     *
+     * @param threads        线程数，使用虚拟线程时忽略
+     * @param virtualThreads 是否使用虚拟线程
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService newExecutor(int threads, boolean virtualThreads)
+    {
+        if (virtualThreads)
+        {
+            try
+            {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            }
+            catch (ReflectiveOperationException | UnsupportedOperationException e)
+            {
+                log.warn("当前 JDK 不支持虚拟线程，使用普通线程池：" + e);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), new DefaultThreadFactory("business"));
+    }
+}
@@ -0,0 +1,239 @@
+package mao.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+import mao.message.Message;
+import mao.metrics.ProtocolMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): DispatchHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/1
+ * Time(创建时间)： 11:05
+ * Version(版本): 1.0
+ * Description(描述)： 业务分发处理器，把消息交给注册的 {@link MessageHandler} 在业务线程池中执行，不占用 I/O 线程。
+ * 每个连接一个 {@link OrderedExecutor}，同一个连接的消息按顺序处理。
+ * 所有连接排队中的任务总数有上限，超过时调用 {@link MessageHandler#rejected} 拒绝。
+ * 没有注册处理器的消息继续往后传；executor 为 null 时直接在 I/O 线程中处理
+ */
+
+@Slf4j
+@ChannelHandler.Sharable
+public class DispatchHandler extends ChannelInboundHandlerAdapter
+{
+    /**
+     * 每个连接的串行执行器
+     */
+    private static final AttributeKey<OrderedExecutor> ORDERED_EXECUTOR = AttributeKey.valueOf("orderedExecutor");
+
+    /**
+     * 消息类型 -> 处理器，启动前注册完
+     */
+    private final Map<Class<?>, MessageHandler<Message>> handlers = new HashMap<>();
+
+    /**
+     * 业务线程池，为 null 时直接在 I/O 线程中处理
+     */
+    private final Executor executor;
+
+    /**
+     * 最大排队任务数
+     */
+    private final int maxPendingTasks;
+
+    /**
+     * 当前排队和执行中的任务数
+     */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    /**
+     * 线程池拒绝执行时，串行执行器把没有执行的任务交给它
+     */
+    private final Consumer<Runnable> rejectedHandler = new Consumer<Runnable>()
+    {
+        @Override
+        public void accept(Runnable task)
+        {
+            ((DispatchTask) task).reject();
+        }
+    };
+
+    /**
+     * 业务分发处理器
+     *
+     * @param executor        业务线程池，为 null 时直接在 I/O 线程中处理
+     * @param maxPendingTasks 最大排队任务数
+     */
+    public DispatchHandler(Executor executor, int maxPendingTasks)
+    {
+        this.executor = executor;
+        this.maxPendingTasks = maxPendingTasks;
+    }
+
+    /**
+     * 注册消息处理器
+     *
+     * @param messageClass 消息类型
+     * @param handler      处理器
+     * @return {@link DispatchHandler}
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Message> DispatchHandler register(Class<T> messageClass, MessageHandler<? super T> handler)
+    {
+        handlers.put(messageClass, (MessageHandler<Message>) handler);
+        return this;
+    }
+
+    /**
+     * 当前排队和执行中的任务数
+     *
+     * @return int
+     */
+    public int getPendingTasks()
+    {
+        return pendingTasks.get();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        MessageHandler<Message> handler = handlers.get(msg.getClass());
+        if (handler == null)
+        {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        Message message = (Message) msg;
+        if (executor == null)
+        {
+            invoke(handler, ctx, message);
+            return;
+        }
+        if (pendingTasks.incrementAndGet() > maxPendingTasks)
+        {
+            pendingTasks.decrementAndGet();
+            reject(handler, ctx, message);
+            return;
+        }
+        //线程池拒绝执行时由 rejectedHandler 减少计数并拒绝
+        orderedExecutor(ctx.channel()).execute(new DispatchTask(handler, ctx, message));
+    }
+
+    /**
+     * 得到连接的串行执行器，只在 I/O 线程中调用
+     *
+     * @param channel channel
+     * @return {@link OrderedExecutor}
+     */
+    private OrderedExecutor orderedExecutor(Channel channel)
+    {
+        OrderedExecutor orderedExecutor = channel.attr(ORDERED_EXECUTOR).get();
+        if (orderedExecutor == null)
+        {
+            orderedExecutor = new OrderedExecutor(executor, rejectedHandler);
+            channel.attr(ORDERED_EXECUTOR).set(orderedExecutor);
+        }
+        return orderedExecutor;
+    }
+
+    /**
+     * 调用处理器
+     *
+     * @param handler 处理器
+     * @param ctx     ctx
+     * @param message 消息
+     */
+    private static void invoke(MessageHandler<Message> handler, ChannelHandlerContext ctx, Message message)
+    {
+        long startTime = ProtocolMetrics.startTime();
+        try
+        {
+            handler.handle(ctx, message);
+        }
+        catch (Throwable e)
+        {
+            log.error("处理消息失败：" + message.getClass().getSimpleName(), e);
+        }
+        finally
+        {
+            ProtocolMetrics.recordHandler(message.getMessageType(), startTime);
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * 拒绝消息
+     *
+     * @param handler 处理器
+     * @param ctx     ctx
+     * @param message 消息
+     */
+    private static void reject(MessageHandler<Message> handler, ChannelHandlerContext ctx, Message message)
+    {
+        log.warn("业务线程繁忙，拒绝消息：{}，{}", message.getClass().getSimpleName(), ctx.channel());
+        try
+        {
+            handler.rejected(ctx, message);
+        }
+        finally
+        {
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * 在业务线程中处理一条消息的任务
+     */
+    private final class DispatchTask implements Runnable
+    {
+        private final MessageHandler<Message> handler;
+
+        private final ChannelHandlerContext ctx;
+
+        private final Message message;
+
+        DispatchTask(MessageHandler<Message> handler, ChannelHandlerContext ctx, Message message)
+        {
+            this.handler = handler;
+            this.ctx = ctx;
+            this.message = message;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                invoke(handler, ctx, message);
+            }
+            finally
+            {
+                pendingTasks.decrementAndGet();
+            }
+        }
+
+        /**
+         * 线程池拒绝执行，没有执行就结束
+         */
+        void reject()
+        {
+            pendingTasks.decrementAndGet();
+            DispatchHandler.reject(handler, ctx, message);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package mao.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import mao.config.ServerConfig;
+import mao.message.PingMessage;
+import mao.message.PongMessage;
+import mao.metrics.ProtocolMetrics;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): HeartbeatHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/8
+ * Time(创建时间)： 10:15
+ * Version(版本): 1.0
+ * Description(描述)： 心跳和空闲连接管理。
+ * 写空闲超过 pingInterval 时发送序列号为 0 的 ping(对端回的序列号为 0 的 pong 在这里吞掉，不交给业务处理器)；
+ * 读空闲超过 readTimeout 时认为对端已经失效，关闭连接。客户端两个都用，服务端只用 readTimeout 清理空闲连接。
+ * 所有连接共用一个时间轮，每个连接只有一个定时任务，到期时回到连接的事件循环检查并按最近的截止时间重新安排，
+ * 不像 IdleStateHandler 那样每个连接在事件循环上挂多个定时任务，几十万个空闲连接也只占用固定的内存。
+ * 需要放在编解码之后(ping 经过编码器写出)，每个连接一个实例
+ */
+
+@Slf4j
+public class HeartbeatHandler extends ChannelDuplexHandler implements TimerTask
+{
+    /**
+     * 所有连接共用的时间轮
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(new DefaultThreadFactory("heartbeat", true),
+            ServerConfig.getHeartbeatTickMillis(), TimeUnit.MILLISECONDS);
+
+    /**
+     * 已停止的标记
+     */
+    private static final Timeout CANCELLED = new Timeout()
+    {
+        @Override
+        public Timer timer()
+        {
+            return TIMER;
+        }
+
+        @Override
+        public TimerTask task()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isExpired()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * 写空闲多久发送 ping，纳秒，0 表示不发送
+     */
+    private final long pingIntervalNanos;
+
+    /**
+     * 读空闲多久关闭连接，纳秒，0 表示不关闭
+     */
+    private final long readTimeoutNanos;
+
+    private ChannelHandlerContext ctx;
+
+    /**
+     * 最后一次读到数据的时间
+     */
+    private long lastReadTime;
+
+    /**
+     * 最后一次写数据的时间
+     */
+    private long lastWriteTime;
+
+    /**
+     * 当前的定时任务
+     */
+    private Timeout timeout;
+
+    /**
+     * 在事件循环中执行的检查
+     */
+    private final Runnable checkTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            check();
+        }
+    };
+
+    /**
+     * 心跳和空闲连接管理
+     *
+     * @param pingIntervalMillis 写空闲多久发送 ping，毫秒，0 表示不发送
+     * @param readTimeoutMillis  读空闲多久关闭连接，毫秒，0 表示不关闭
+     */
+    public HeartbeatHandler(long pingIntervalMillis, long readTimeoutMillis)
+    {
+        if (pingIntervalMillis < 0 || readTimeoutMillis < 0)
+        {
+            throw new IllegalArgumentException("pingIntervalMillis: " + pingIntervalMillis +
+                    ", readTimeoutMillis: " + readTimeoutMillis + " (不能小于0)");
+        }
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+    {
+        this.ctx = ctx;
+        if (ctx.channel().isActive() && ctx.channel().isRegistered())
+        {
+            start();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception
+    {
+        stop();
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception
+    {
+        start();
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        stop();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        //心跳的 pong 到这里为止
+        if (msg instanceof PongMessage && ((PongMessage) msg).getSequenceId() == 0)
+        {
+            ((PongMessage) msg).recycle();
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception
+    {
+        //一批读完记一次时间，不用每条消息都取时间
+        lastReadTime = System.nanoTime();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+    {
+        if (pingIntervalNanos > 0)
+        {
+            lastWriteTime = System.nanoTime();
+        }
+        ctx.write(msg, promise);
+    }
+
+    /**
+     * 开始计时，只安排一次
+     */
+    private void start()
+    {
+        if (timeout != null || (pingIntervalNanos == 0 && readTimeoutNanos == 0))
+        {
+            return;
+        }
+        long now = System.nanoTime();
+        lastReadTime = now;
+        lastWriteTime = now;
+        schedule(now);
+    }
+
+    /**
+     * 停止计时
+     */
+    private void stop()
+    {
+        Timeout timeout = this.timeout;
+        if (timeout != null)
+        {
+            timeout.cancel();
+        }
+        //不再重新安排
+        this.timeout = CANCELLED;
+    }
+
+    /**
+     * 按最近的截止时间安排下一次检查
+     *
+     * @param now 当前时间
+     */
+    private void schedule(long now)
+    {
+        long deadline = Long.MAX_VALUE;
+        if (pingIntervalNanos > 0)
+        {
+            deadline = lastWriteTime + pingIntervalNanos;
+        }
+        if (readTimeoutNanos > 0)
+        {
+            deadline = Math.min(deadline, lastReadTime + readTimeoutNanos);
+        }
+        timeout = TIMER.newTimeout(this, Math.max(0, deadline - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 时间轮线程中执行，回到连接的事件循环中检查
+     *
+     * @param timeout 定时任务
+     */
+    @Override
+    public void run(Timeout timeout) throws Exception
+    {
+        try
+        {
+            ctx.executor().execute(checkTask);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //事件循环已经关闭，连接也随之关闭
+            log.debug("事件循环已关闭，停止心跳：{}", ctx.channel());
+        }
+    }
+
+    /**
+     * 检查读写空闲，在事件循环中执行
+     */
+    private void check()
+    {
+        if (timeout == CANCELLED || !ctx.channel().isActive())
+        {
+            return;
+        }
+        long now = System.nanoTime();
+        if (readTimeoutNanos > 0 && now - lastReadTime >= readTimeoutNanos)
+        {
+            log.debug("读空闲超过 {} 毫秒，关闭连接：{}", TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos), ctx.channel());
+            ProtocolMetrics.recordIdleClosed();
+            timeout = CANCELLED;
+            ctx.close();
+            return;
+        }
+        if (pingIntervalNanos > 0 && now - lastWriteTime >= pingIntervalNanos)
+        {
+            PingMessage pingMessage = PingMessage.newInstance();
+            pingMessage.setTime(System.currentTimeMillis());
+            //序列号 0 表示不关联请求和响应
+            pingMessage.setSequenceId(0);
+            lastWriteTime = now;
+            ctx.writeAndFlush(pingMessage);
+        }
+        schedule(now);
+    }
+}
@@ -0,0 +1,190 @@
+package mao.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import mao.message.BatchMessage;
+import mao.message.FileStreamMessage;
+import mao.message.Message;
+import mao.message.StreamChunkMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): MessageBatchHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/30
+ * Time(创建时间)： 14:45
+ * Version(版本): 1.0
+ * Description(描述)： 把两次 flush 之间写入的多条消息打包成 {@link BatchMessage}，一个消息头带多条消息。
+ * 读事件处理过程中业务处理器的 flush 先不往下传，到本批读完时再打包写出并 flush，这样一次读到的多个请求的响应能打进同一个批量消息。
+ * 需要加在编解码器之后(靠近 tail)，业务处理器之前；每个连接一个实例。
+ * 只有一条时原样写出；非 Message 的写入会先把已经攒下的消息写出，保证顺序
+ */
+
+public class MessageBatchHandler extends ChannelDuplexHandler
+{
+    /**
+     * 一个批量消息最多包含的消息条数
+     */
+    private final int maxMessages;
+
+    /**
+     * 攒下的消息
+     */
+    private List<Message> messages = new ArrayList<>();
+
+    /**
+     * 攒下的消息对应的 promise
+     */
+    private List<ChannelPromise> promises = new ArrayList<>();
+
+    /**
+     * 是否正在读
+     */
+    private boolean readInProgress;
+
+    /**
+     * 读的过程中是否有被推迟的 flush
+     */
+    private boolean flushPending;
+
+    /**
+     * 批量消息
+     *
+     * @param maxMessages 一个批量消息最多包含的消息条数
+     */
+    public MessageBatchHandler(int maxMessages)
+    {
+        if (maxMessages < 2)
+        {
+            throw new IllegalArgumentException("maxMessages: " + maxMessages + " (应该大于等于2)");
+        }
+        this.maxMessages = maxMessages;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+    {
+        //流的数据块不经过序列化器，不能放进批量消息
+        if (msg instanceof Message && !(msg instanceof BatchMessage) && !(msg instanceof StreamChunkMessage) &&
+                !(msg instanceof FileStreamMessage))
+        {
+            messages.add((Message) msg);
+            promises.add(promise);
+            if (messages.size() >= maxMessages)
+            {
+                writePending(ctx);
+            }
+            return;
+        }
+        writePending(ctx);
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception
+    {
+        if (readInProgress)
+        {
+            flushPending = true;
+            return;
+        }
+        writePending(ctx);
+        ctx.flush();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception
+    {
+        readInProgress = false;
+        if (flushPending)
+        {
+            flushPending = false;
+            writePending(ctx);
+            ctx.flush();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception
+    {
+        readInProgress = false;
+        writePending(ctx);
+        if (flushPending)
+        {
+            flushPending = false;
+            ctx.flush();
+        }
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception
+    {
+        writePending(ctx);
+        if (flushPending)
+        {
+            flushPending = false;
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 把攒下的消息写出去
+     *
+     * @param ctx ctx
+     */
+    private void writePending(ChannelHandlerContext ctx)
+    {
+        int size = messages.size();
+        if (size == 0)
+        {
+            return;
+        }
+        if (size == 1)
+        {
+            ctx.write(messages.get(0), promises.get(0));
+            messages.clear();
+            promises.clear();
+            return;
+        }
+        List<Message> batch = messages;
+        List<ChannelPromise> batchPromises = promises;
+        messages = new ArrayList<>();
+        promises = new ArrayList<>();
+        ctx.write(new BatchMessage(batch)).addListener(new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception
+            {
+                for (ChannelPromise promise : batchPromises)
+                {
+                    if (future.isSuccess())
+                    {
+                        promise.trySuccess();
+                    }
+                    else
+                    {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package mao.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import mao.message.Message;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Interface(接口名): MessageHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/1
+ * Time(创建时间)： 10:00
+ * Version(版本): 1.0
+ * Description(描述)： 业务消息处理器，由 {@link DispatchHandler} 在业务线程中调用，
+ * 同一个连接的消息按接收顺序依次处理。响应直接 ctx.writeAndFlush，netty 会切回 I/O 线程写出
+ */
+
+public interface MessageHandler<T extends Message>
+{
+    /**
+     * 处理消息
+     *
+     * @param ctx     ctx
+     * @param message 消息
+     * @throws Exception 异常
+     */
+    void handle(ChannelHandlerContext ctx, T message) throws Exception;
+
+    /**
+     * 业务线程繁忙或者线程池已经关闭，消息被拒绝时调用。一般在 I/O 线程中执行，
+     * 线程池关闭时排队中的消息也可能在业务线程中拒绝，不能做耗时操作。默认直接丢弃消息
+     *
+     * @param ctx     ctx
+     * @param message 消息
+     */
+    default void rejected(ChannelHandlerContext ctx, T message)
+    {
+    }
+}
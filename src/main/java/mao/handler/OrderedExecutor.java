@@ -0,0 +1,157 @@
+package mao.handler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): OrderedExecutor
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/1
+ * Time(创建时间)： 10:20
+ * Version(版本): 1.0
+ * Description(描述)： 串行执行器，提交的任务按顺序一个一个在共享的线程池中执行，
+ * 不同的 OrderedExecutor 之间可以并行。每个连接一个，保证同一个连接的消息按顺序处理。
+ * 线程池拒绝执行(例如已经关闭)时，排队中的任务逐个交给拒绝处理器，不会悄悄丢掉
+ */
+
+@Slf4j
+public class OrderedExecutor implements Executor
+{
+    /**
+     * 一次最多连续执行的任务数，执行完让出线程，避免一个连接长期占用
+     */
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    /**
+     * 共享的线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 线程池拒绝执行时，每个没有执行的任务都交给它
+     */
+    private final Consumer<Runnable> rejectedHandler;
+
+    /**
+     * 待执行的任务
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 是否已经提交到线程池
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * 执行任务
+     */
+    private final Runnable runner = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < MAX_TASKS_PER_RUN; i++)
+                {
+                    Runnable task = tasks.poll();
+                    if (task == null)
+                    {
+                        break;
+                    }
+                    try
+                    {
+                        task.run();
+                    }
+                    catch (Throwable e)
+                    {
+                        log.error("任务执行失败", e);
+                    }
+                }
+            }
+            finally
+            {
+                scheduled.set(false);
+                if (!tasks.isEmpty())
+                {
+                    schedule();
+                }
+            }
+        }
+    };
+
+    /**
+     * 串行执行器
+     *
+     * @param executor        共享的线程池
+     * @param rejectedHandler 线程池拒绝执行时，每个没有执行的任务都交给它，可能在提交任务的线程或者线程池的线程中调用
+     */
+    public OrderedExecutor(Executor executor, Consumer<Runnable> rejectedHandler)
+    {
+        this.executor = executor;
+        this.rejectedHandler = rejectedHandler;
+    }
+
+    /**
+     * 提交任务。线程池拒绝执行时不抛出异常，这个任务和排队中的任务都交给拒绝处理器
+     *
+     * @param task 任务
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        tasks.offer(task);
+        schedule();
+    }
+
+    /**
+     * 没有在执行时提交到线程池
+     */
+    private void schedule()
+    {
+        if (scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(runner);
+            }
+            catch (RejectedExecutionException e)
+            {
+                scheduled.set(false);
+                rejectQueued(e);
+            }
+        }
+    }
+
+    /**
+     * 排队中的任务逐个交给拒绝处理器，由它释放消息、更新计数
+     *
+     * @param cause 线程池拒绝的原因
+     */
+    private void rejectQueued(RejectedExecutionException cause)
+    {
+        log.warn("线程池拒绝执行，拒绝排队中的任务：{}", cause.getMessage());
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+        {
+            try
+            {
+                rejectedHandler.accept(task);
+            }
+            catch (Throwable e)
+            {
+                log.error("拒绝任务失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package mao.message;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): BatchMessage
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/30
+ * Time(创建时间)： 10:15
+ * Version(版本): 1.0
+ * Description(描述)： 批量消息，一个消息头后面带多条子消息。
+ * 正文不走序列化器整体序列化，由编解码器写成：变长条数 + 每条的(类型, 序列号, 长度)表 + 各子消息正文，
+ * 子消息正文用帧头中的序列化算法序列化。接收方解码后拆成一条条子消息往后传，业务处理器感知不到批量
+ */
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class BatchMessage extends Message
+{
+    /**
+     * 子消息，不能再是批量消息
+     */
+    private transient List<Message> messages;
+
+    public BatchMessage()
+    {
+        this.messages = new ArrayList<>();
+    }
+
+    public BatchMessage(List<Message> messages)
+    {
+        this.messages = messages;
+    }
+
+    @Override
+    public int getMessageType()
+    {
+        return BatchMessage;
+    }
+}
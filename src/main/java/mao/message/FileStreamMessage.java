@@ -0,0 +1,215 @@
+package mao.message;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): FileStreamMessage
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/7
+ * Time(创建时间)： 15:10
+ * Version(版本): 1.0
+ * Description(描述)： 把文件(的一段)作为一个流发送，只用于发送。
+ * 编码器按 stream.file.chunk.size 把它拆成多个 {@link StreamChunkMessage} 帧，每帧的正文是一个 {@link DefaultFileRegion}，
+ * 由操作系统直接从文件发送到 socket(sendfile)，文件内容不经过堆内存。
+ * 上一帧写完才写下一帧，出站缓冲区中同时只有一个数据块；写出的 promise 在最后一帧写完后完成。
+ * 所有数据块共用一个 FileChannel，最后一个数据块发送完(或者写失败被释放)后关闭
+ */
+
+@Slf4j
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class FileStreamMessage extends Message implements ReferenceCounted
+{
+    /**
+     * 文件
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final transient FileChannel fileChannel;
+
+    /**
+     * 从文件的哪个位置开始发送
+     */
+    private final long position;
+
+    /**
+     * 发送多少字节
+     */
+    private final long count;
+
+    /**
+     * 引用计数，消息本身和每个数据块各持有一个，全部释放后关闭文件
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final transient AbstractReferenceCounted refCnt = new AbstractReferenceCounted()
+    {
+        @Override
+        protected void deallocate()
+        {
+            try
+            {
+                fileChannel.close();
+            }
+            catch (IOException e)
+            {
+                log.warn("关闭文件失败", e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint)
+        {
+            return this;
+        }
+    };
+
+    /**
+     * 发送整个文件
+     *
+     * @param streamId 流 id
+     * @param file     文件
+     * @throws IOException 打开文件失败
+     */
+    public FileStreamMessage(int streamId, File file) throws IOException
+    {
+        this(streamId, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * 发送整个文件
+     *
+     * @param streamId    流 id
+     * @param fileChannel 文件，所有权交给消息
+     * @throws IOException 读取文件大小失败
+     */
+    public FileStreamMessage(int streamId, FileChannel fileChannel) throws IOException
+    {
+        this(streamId, fileChannel, 0, fileChannel.size());
+    }
+
+    /**
+     * 发送文件的一段
+     *
+     * @param streamId    流 id
+     * @param fileChannel 文件，所有权交给消息
+     * @param position    从文件的哪个位置开始发送
+     * @param count       发送多少字节
+     */
+    public FileStreamMessage(int streamId, FileChannel fileChannel, long position, long count)
+    {
+        if (position < 0 || count < 0)
+        {
+            throw new IllegalArgumentException("position: " + position + ", count: " + count + " (不能小于0)");
+        }
+        setSequenceId(streamId);
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.count = count;
+    }
+
+    /**
+     * 流 id，就是序列号
+     *
+     * @return int
+     */
+    public int getStreamId()
+    {
+        return getSequenceId();
+    }
+
+    /**
+     * 创建一个数据块，数据块持有一个引用，发送完释放时归还
+     *
+     * @param offset 相对于 position 的偏移量
+     * @param length 长度
+     * @return {@link DefaultFileRegion}
+     */
+    public DefaultFileRegion region(long offset, long length)
+    {
+        refCnt.retain();
+        return new DefaultFileRegion(fileChannel, position + offset, length)
+        {
+            @Override
+            protected void deallocate()
+            {
+                //文件由所有数据块共用，不在这里关闭
+                refCnt.release();
+            }
+        };
+    }
+
+    /**
+     * 在流中发送时的消息类型
+     *
+     * @return int
+     */
+    @Override
+    public int getMessageType()
+    {
+        return StreamChunkMessage;
+    }
+
+    @Override
+    public int refCnt()
+    {
+        return refCnt.refCnt();
+    }
+
+    @Override
+    public FileStreamMessage retain()
+    {
+        refCnt.retain();
+        return this;
+    }
+
+    @Override
+    public FileStreamMessage retain(int increment)
+    {
+        refCnt.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FileStreamMessage touch()
+    {
+        return this;
+    }
+
+    @Override
+    public FileStreamMessage touch(Object hint)
+    {
+        return this;
+    }
+
+    @Override
+    public boolean release()
+    {
+        return refCnt.release();
+    }
+
+    @Override
+    public boolean release(int decrement)
+    {
+        return refCnt.release(decrement);
+    }
+}
@@ -1,7 +1,6 @@
 package mao.message;
 
 import lombok.*;
-import mao.protocol.SequenceIdGenerator;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -30,19 +29,16 @@ public class HelloResponseMessage extends AbstractResponseMessage
     public HelloResponseMessage(String body)
     {
         this.body = body;
-        setSequenceId(SequenceIdGenerator.nextId());
     }
 
     public HelloResponseMessage(boolean success, String reason, String body)
     {
         super(success, reason);
         this.body = body;
-        setSequenceId(SequenceIdGenerator.nextId());
     }
 
     public HelloResponseMessage()
     {
-        setSequenceId(SequenceIdGenerator.nextId());
     }
 
     @Override
@@ -1,10 +1,9 @@
 package mao.message;
 
 import lombok.Data;
+import mao.config.ServerConfig;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -26,11 +25,13 @@ public abstract class Message implements Serializable
      * 根据消息类型字节，获得对应的消息 class
      *
      * @param messageType 消息类型字节
-     * @return 消息 class
+     * @return 消息 class，未注册时返回 null
+     * @see MessageTypeRegistry
      */
     public static Class<? extends Message> getMessageClass(int messageType)
     {
-        return messageClasses.get(messageType);
+        MessageType<?> type = MessageTypeRegistry.find(messageType);
+        return type == null ? null : type.getMessageClass();
     }
 
     /**
@@ -50,10 +51,26 @@ public abstract class Message implements Serializable
      */
     public abstract int getMessageType();
 
+    /**
+     * 把对象放回对象池，编码器在消息编码后调用，处理器在消息处理完后调用。
+     * 只对从对象池中取出的对象有效，其它对象什么也不做；放回后不能再使用这个对象，
+     * 所以从对象池中取出的消息只能写出一次
+     */
+    public void recycle()
+    {
+    }
+
+    /**
+     * 是否使用对象池，启动时读取
+     */
+    protected static final boolean RECYCLE_ENABLED = ServerConfig.isMessageRecycleEnabled();
+
     public static final int PingMessage = 1;
     public static final int PongMessage = 2;
     public static final int HelloRequestMessage = 3;
     public static final int HelloResponseMessage = 4;
+    public static final int BatchMessage = 5;
+    public static final int StreamChunkMessage = 6;
 
 
     /**
@@ -65,17 +82,4 @@ public abstract class Message implements Serializable
      * 响应类型 byte 值
      */
     public static final int RPC_MESSAGE_TYPE_RESPONSE = 102;
-
-    /**
-     * 消息类
-     */
-    private static final Map<Integer, Class<? extends Message>> messageClasses = new HashMap<>();
-
-    static
-    {
-        messageClasses.put(PingMessage, PingMessage.class);
-        messageClasses.put(PongMessage, PongMessage.class);
-        messageClasses.put(HelloRequestMessage, HelloRequestMessage.class);
-        messageClasses.put(HelloResponseMessage, HelloResponseMessage.class);
-    }
 }
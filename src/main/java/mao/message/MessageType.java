@@ -0,0 +1,93 @@
+package mao.message;
+
+import mao.protocol.BinarySchema;
+
+import java.util.function.Supplier;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): MessageType
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/5
+ * Time(创建时间)： 15:30
+ * Version(版本): 1.0
+ * Description(描述)： 注册的消息类型：类型字节、消息类和创建消息对象的工厂在注册时解析好，编解码时不再按消息类查找；
+ * 二进制序列化的字段结构第一次用 Binary 编解码时生成并缓存，只用 Json、Java 序列化的消息类不受 Binary 的字段类型限制
+ */
+
+public final class MessageType<T extends Message>
+{
+    /**
+     * 消息类型字节
+     */
+    private final int type;
+
+    /**
+     * 消息类
+     */
+    private final Class<T> messageClass;
+
+    /**
+     * 创建消息对象的工厂
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * 二进制序列化的字段结构，第一次使用时生成
+     */
+    private volatile BinarySchema<T> schema;
+
+    MessageType(int type, Class<T> messageClass, Supplier<T> factory)
+    {
+        this.type = type;
+        this.messageClass = messageClass;
+        this.factory = factory;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public Class<T> getMessageClass()
+    {
+        return messageClass;
+    }
+
+    /**
+     * 二进制序列化的字段结构，第一次调用时生成，之后直接返回缓存的结构
+     *
+     * @return {@link BinarySchema}<{@link T}>
+     * @throws IllegalArgumentException 消息类有二进制序列化不支持的字段类型
+     */
+    public BinarySchema<T> getSchema()
+    {
+        BinarySchema<T> schema = this.schema;
+        if (schema == null)
+        {
+            //并发时可能生成多次，BinarySchema.of 返回的是同一个对象
+            schema = BinarySchema.of(messageClass);
+            this.schema = schema;
+        }
+        return schema;
+    }
+
+    /**
+     * 创建一个空的消息对象，由反序列化填充字段
+     *
+     * @return {@link T}
+     */
+    public T newInstance()
+    {
+        return factory.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return messageClass.getSimpleName() + "(" + type + ")";
+    }
+}
@@ -0,0 +1,167 @@
+package mao.message;
+
+import io.netty.handler.codec.CorruptedFrameException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): MessageTypeRegistry
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/5
+ * Time(创建时间)： 15:40
+ * Version(版本): 1.0
+ * Description(描述)： 消息类型注册表，按类型字节直接查数组，不装箱、不查 HashMap。
+ * 内置的消息类型在类加载时注册，新的消息类型调用 {@link #register} 注册，应该在开始收发消息之前完成。
+ * 注册时解析工厂，没有工厂时注册直接失败；二进制序列化的字段结构在第一次用 Binary 编解码时生成。
+ * 注册时复制出新的数组，通过 volatile 字段整体发布，启动后注册的类型对 I/O 线程立即可见。
+ * 解码时遇到未注册的类型直接抛出 {@link CorruptedFrameException}，不会拖到反序列化时才出错
+ */
+
+@Slf4j
+public final class MessageTypeRegistry
+{
+    /**
+     * 下标为消息类型字节，发布后不再修改
+     */
+    private static volatile MessageType<?>[] messageTypes = new MessageType<?>[256];
+
+    static
+    {
+        //ping、pong 用对象池创建，需要工厂的序列化器(binary)解码时从对象池中取
+        register(Message.PingMessage, PingMessage.class, PingMessage::newInstance);
+        register(Message.PongMessage, PongMessage.class, PongMessage::newInstance);
+        register(Message.HelloRequestMessage, HelloRequestMessage.class);
+        register(Message.HelloResponseMessage, HelloResponseMessage.class);
+        register(Message.BatchMessage, BatchMessage.class);
+        register(Message.StreamChunkMessage, StreamChunkMessage.class);
+    }
+
+    private MessageTypeRegistry()
+    {
+    }
+
+    /**
+     * 注册消息类型，用无参构造方法作为工厂
+     *
+     * @param type         消息类型字节
+     * @param messageClass 消息类
+     * @throws IllegalArgumentException 消息类没有可访问的无参构造方法
+     */
+    public static <T extends Message> void register(int type, Class<T> messageClass)
+    {
+        Supplier<T> factory = constructorFactory(messageClass);
+        if (factory == null)
+        {
+            throw new IllegalArgumentException(messageClass.getName() + " 没有可访问的无参构造方法，注册时需要传入工厂");
+        }
+        register(type, messageClass, factory);
+    }
+
+    /**
+     * 注册消息类型
+     *
+     * @param type         消息类型字节
+     * @param messageClass 消息类
+     * @param factory      创建消息对象的工厂，Binary 反序列化时用它创建对象，消息类可以没有无参构造方法
+     */
+    public static synchronized <T extends Message> void register(int type, Class<T> messageClass, Supplier<T> factory)
+    {
+        if (type < 0 || type > 255)
+        {
+            throw new IllegalArgumentException("type: " + type + " (应该在0-255之间)");
+        }
+        if (messageClass == null || factory == null)
+        {
+            throw new NullPointerException("messageClass 和 factory 不能为空");
+        }
+        MessageType<?> old = messageTypes[type];
+        if (old != null && old.getMessageClass() != messageClass)
+        {
+            throw new IllegalStateException("消息类型 " + type + " 已经注册为 " + old.getMessageClass().getName());
+        }
+        MessageType<?>[] newMessageTypes = messageTypes.clone();
+        newMessageTypes[type] = new MessageType<>(type, messageClass, factory);
+        messageTypes = newMessageTypes;
+        log.debug("注册消息类型：{} -> {}", type, messageClass.getName());
+    }
+
+    /**
+     * 得到消息类型，未注册时抛出异常，解码时使用
+     *
+     * @param type 消息类型字节
+     * @return {@link MessageType}<{@link ?}>
+     */
+    public static MessageType<?> get(int type)
+    {
+        MessageType<?> messageType = messageTypes[type & 0xff];
+        if (messageType == null)
+        {
+            throw new CorruptedFrameException("未知的消息类型：" + (type & 0xff));
+        }
+        return messageType;
+    }
+
+    /**
+     * 得到消息类型
+     *
+     * @param type 消息类型字节
+     * @return {@link MessageType}<{@link ?}> 未注册时返回 null
+     */
+    public static MessageType<?> find(int type)
+    {
+        return messageTypes[type & 0xff];
+    }
+
+    /**
+     * 用无参构造方法生成工厂
+     *
+     * @param messageClass 消息类
+     * @return {@link Supplier}<{@link T}> 没有可访问的无参构造方法时返回 null
+     */
+    private static <T extends Message> Supplier<T> constructorFactory(Class<T> messageClass)
+    {
+        if (Modifier.isAbstract(messageClass.getModifiers()))
+        {
+            return null;
+        }
+        MethodHandle constructor;
+        try
+        {
+            constructor = MethodHandles.privateLookupIn(messageClass, MethodHandles.lookup())
+                    .findConstructor(messageClass, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Message.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            return null;
+        }
+        return new Supplier<T>()
+        {
+            @Override
+            public T get()
+            {
+                try
+                {
+                    return messageClass.cast((Message) constructor.invokeExact());
+                }
+                catch (RuntimeException | Error e)
+                {
+                    throw e;
+                }
+                catch (Throwable e)
+                {
+                    throw new RuntimeException("创建 " + messageClass.getName() + " 失败", e);
+                }
+            }
+        };
+    }
+}
@@ -1,7 +1,12 @@
 package mao.message;
 
+import io.netty.util.Recycler;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -14,17 +19,69 @@ import lombok.EqualsAndHashCode;
  * Time(创建时间)： 14:17
  * Version(版本): 1.0
  * Description(描述)： ping消息
+ * 心跳流量中数量最多的消息，用 {@link #newInstance()} 从对象池中取出，编码后或者处理完后由框架调用 {@link #recycle()} 放回
  */
 
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class PingMessage extends Message
 {
+    /**
+     * 对象池
+     */
+    private static final Recycler<PingMessage> RECYCLER = new Recycler<PingMessage>()
+    {
+        @Override
+        protected PingMessage newObject(Handle<PingMessage> handle)
+        {
+            return new PingMessage(handle);
+        }
+    };
+
     /**
      * 时间
      */
     private long time;
 
+    /**
+     * 对象池的句柄，直接 new 出来的对象为 null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient Recycler.Handle<PingMessage> handle;
+
+    public PingMessage()
+    {
+        this.handle = null;
+    }
+
+    private PingMessage(Recycler.Handle<PingMessage> handle)
+    {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中取出一个对象，没有开启对象池时直接创建
+     *
+     * @return {@link PingMessage}
+     */
+    public static PingMessage newInstance()
+    {
+        return RECYCLE_ENABLED ? RECYCLER.get() : new PingMessage();
+    }
+
+    @Override
+    public void recycle()
+    {
+        if (handle != null)
+        {
+            time = 0;
+            setSequenceId(0);
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public int getMessageType()
     {
@@ -1,8 +1,12 @@
 package mao.message;
 
+import io.netty.util.Recycler;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import mao.protocol.SequenceIdGenerator;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -15,6 +19,7 @@ import mao.protocol.SequenceIdGenerator;
  * Time(创建时间)： 14:18
  * Version(版本): 1.0
  * Description(描述)： pong 消息
+ * 心跳流量中数量最多的消息，用 {@link #newInstance()} 从对象池中取出，编码后或者处理完后由框架调用 {@link #recycle()} 放回
  */
 
 
@@ -22,20 +27,66 @@ import mao.protocol.SequenceIdGenerator;
 @EqualsAndHashCode(callSuper = true)
 public class PongMessage extends Message
 {
+    /**
+     * 对象池
+     */
+    private static final Recycler<PongMessage> RECYCLER = new Recycler<PongMessage>()
+    {
+        @Override
+        protected PongMessage newObject(Handle<PongMessage> handle)
+        {
+            return new PongMessage(handle);
+        }
+    };
+
     /**
      * 请求时间
      */
     private long time;
 
+    /**
+     * 对象池的句柄，直接 new 出来的对象为 null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient Recycler.Handle<PongMessage> handle;
+
     public PongMessage(int time)
     {
         this.time = time;
-        setSequenceId(SequenceIdGenerator.nextId());
+        this.handle = null;
     }
 
     public PongMessage()
     {
-        setSequenceId(SequenceIdGenerator.nextId());
+        this.handle = null;
+    }
+
+    private PongMessage(Recycler.Handle<PongMessage> handle)
+    {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中取出一个对象，没有开启对象池时直接创建
+     *
+     * @return {@link PongMessage}
+     */
+    public static PongMessage newInstance()
+    {
+        return RECYCLE_ENABLED ? RECYCLER.get() : new PongMessage();
+    }
+
+    @Override
+    public void recycle()
+    {
+        if (handle != null)
+        {
+            time = 0;
+            setSequenceId(0);
+            handle.recycle(this);
+        }
     }
 
     @Override
@@ -0,0 +1,120 @@
+package mao.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): StreamChunkMessage
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/7
+ * Time(创建时间)： 14:30
+ * Version(版本): 1.0
+ * Description(描述)： 流的一块数据。正文就是原始字节，不经过序列化器；序列号是流的 id，消息头的续帧标志表示后面还有数据。
+ * 接收端每收到一帧就交给业务处理器一块，不等整个流收完，适合传输大文件等不能整个放在内存中的数据。
+ * 持有的 {@link ByteBuf} 由接收方释放(SimpleChannelInboundHandler 会自动释放)，发送时由编码器释放
+ */
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class StreamChunkMessage extends Message implements ReferenceCounted
+{
+    /**
+     * 这一块数据
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient ByteBuf content;
+
+    /**
+     * 是否是流的最后一块
+     */
+    private boolean last;
+
+    public StreamChunkMessage()
+    {
+    }
+
+    /**
+     * 流的一块数据
+     *
+     * @param streamId 流 id
+     * @param content  数据，所有权交给消息
+     * @param last     是否是最后一块
+     */
+    public StreamChunkMessage(int streamId, ByteBuf content, boolean last)
+    {
+        setSequenceId(streamId);
+        this.content = content;
+        this.last = last;
+    }
+
+    /**
+     * 流 id，就是序列号
+     *
+     * @return int
+     */
+    public int getStreamId()
+    {
+        return getSequenceId();
+    }
+
+    @Override
+    public int getMessageType()
+    {
+        return StreamChunkMessage;
+    }
+
+    @Override
+    public int refCnt()
+    {
+        return content.refCnt();
+    }
+
+    @Override
+    public StreamChunkMessage retain()
+    {
+        content.retain();
+        return this;
+    }
+
+    @Override
+    public StreamChunkMessage retain(int increment)
+    {
+        content.retain(increment);
+        return this;
+    }
+
+    @Override
+    public StreamChunkMessage touch()
+    {
+        content.touch();
+        return this;
+    }
+
+    @Override
+    public StreamChunkMessage touch(Object hint)
+    {
+        content.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release()
+    {
+        return content.release();
+    }
+
+    @Override
+    public boolean release(int decrement)
+    {
+        return content.release(decrement);
+    }
+}
@@ -0,0 +1,520 @@
+package mao.metrics;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import mao.config.ServerConfig;
+import mao.message.Message;
+import mao.protocol.SerializerRegistry;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.metrics
+ * Class(类名): ProtocolMetrics
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/4
+ * Time(创建时间)： 9:40
+ * Version(版本): 1.0
+ * Description(描述)： 协议指标：按消息类型统计编解码帧数、字节数和业务处理耗时，按序列化算法统计序列化耗时，
+ * 以及活跃连接数、待写出字节数和事件循环排队任务数。
+ * 计数器全部预先创建好，用 LongAdder 分段累加，热路径上不分配对象、不争用同一个缓存行。
+ * 关闭(metrics.enabled=false)后记录方法直接返回，也不调用 System.nanoTime。
+ * 通过 JMX(mao:type=ProtocolMetrics) 和 {@link #dump()} 的文本输出查看
+ */
+
+@Slf4j
+public class ProtocolMetrics implements ProtocolMetricsMXBean
+{
+    /**
+     * 是否开启
+     */
+    public static final boolean ENABLED = ServerConfig.isMetricsEnabled();
+
+    /**
+     * 消息类型的个数，下标为消息类型字节
+     */
+    private static final int MESSAGE_TYPES = 256;
+
+
+    private static final LongAdder[] framesDecoded = newAdders(MESSAGE_TYPES);
+
+    private static final LongAdder[] framesEncoded = newAdders(MESSAGE_TYPES);
+
+    private static final LongAdder[] bytesIn = newAdders(MESSAGE_TYPES);
+
+    private static final LongAdder[] bytesOut = newAdders(MESSAGE_TYPES);
+
+    private static final Timer[] handlerTimers = newTimers(MESSAGE_TYPES);
+
+    /**
+     * 因为空闲超时关闭的连接数
+     */
+    private static final LongAdder idleClosed = new LongAdder();
+
+    private static final Timer[] serializeTimers = newTimers(SerializerRegistry.MAX_SERIALIZERS);
+
+    private static final Timer[] deserializeTimers = newTimers(SerializerRegistry.MAX_SERIALIZERS);
+
+    /**
+     * 活跃连接，关闭后自动移除
+     */
+    private static final ChannelGroup channels = new DefaultChannelGroup("protocol", GlobalEventExecutor.INSTANCE);
+
+    /**
+     * 要统计排队任务数的事件循环组
+     */
+    private static final List<EventLoopGroup> eventLoopGroups = new CopyOnWriteArrayList<>();
+
+    /**
+     * 开始计时
+     *
+     * @return long 关闭时返回 0
+     */
+    public static long startTime()
+    {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 记录编码了一帧
+     *
+     * @param frameType  帧的消息类型
+     * @param frameBytes 帧的字节数，含消息头
+     */
+    public static void recordEncoded(int frameType, int frameBytes)
+    {
+        if (ENABLED)
+        {
+            framesEncoded[frameType & 0xff].increment();
+            bytesOut[frameType & 0xff].add(frameBytes);
+        }
+    }
+
+    /**
+     * 记录解码了一帧
+     *
+     * @param frameType  帧的消息类型
+     * @param frameBytes 帧的字节数，含消息头
+     */
+    public static void recordDecoded(int frameType, int frameBytes)
+    {
+        if (ENABLED)
+        {
+            framesDecoded[frameType & 0xff].increment();
+            bytesIn[frameType & 0xff].add(frameBytes);
+        }
+    }
+
+    /**
+     * 记录一次序列化
+     *
+     * @param serializerId 序列化器 id
+     * @param startTime    {@link #startTime()} 的返回值
+     */
+    public static void recordSerialize(int serializerId, long startTime)
+    {
+        if (ENABLED)
+        {
+            serializeTimers[serializerId & 0xff].record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * 记录一次反序列化
+     *
+     * @param serializerId 序列化器 id
+     * @param startTime    {@link #startTime()} 的返回值
+     */
+    public static void recordDeserialize(int serializerId, long startTime)
+    {
+        if (ENABLED)
+        {
+            deserializeTimers[serializerId & 0xff].record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * 记录一次业务处理
+     *
+     * @param messageType 消息类型
+     * @param startTime   {@link #startTime()} 的返回值
+     */
+    public static void recordHandler(int messageType, long startTime)
+    {
+        if (ENABLED)
+        {
+            handlerTimers[messageType & 0xff].record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * 记录一个连接因为空闲超时被关闭
+     */
+    public static void recordIdleClosed()
+    {
+        if (ENABLED)
+        {
+            idleClosed.increment();
+        }
+    }
+
+    /**
+     * 登记连接，用于统计活跃连接数和待写出字节数
+     *
+     * @param channel channel
+     */
+    public static void registerChannel(Channel channel)
+    {
+        if (ENABLED)
+        {
+            channels.add(channel);
+        }
+    }
+
+    /**
+     * 登记事件循环组，用于统计排队任务数
+     *
+     * @param eventLoopGroup 事件循环组
+     */
+    public static void registerEventLoopGroup(EventLoopGroup eventLoopGroup)
+    {
+        eventLoopGroups.add(eventLoopGroup);
+    }
+
+    /**
+     * 注册到 JMX，名称为 mao:type=ProtocolMetrics
+     */
+    public static void registerMBean()
+    {
+        try
+        {
+            ObjectName objectName = new ObjectName("mao:type=ProtocolMetrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new ProtocolMetrics(), objectName);
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("注册 JMX 失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 文本形式的全部指标，只输出有数据的消息类型和序列化算法
+     *
+     * @return {@link String}
+     */
+    public static String dumpText()
+    {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("---------- 协议指标 ----------\n");
+        sb.append(String.format("活跃连接数：%d  空闲关闭连接数：%d  待写出字节数：%d  事件循环排队任务数：%d%n",
+                channels.size(), idleClosed.sum(), pendingOutboundBytes(), eventLoopPendingTasks()));
+        sb.append(String.format("%-22s %12s %14s %12s %14s %12s %12s %12s%n", "消息类型", "解码帧数", "入站字节",
+                "编码帧数", "出站字节", "处理次数", "平均处理us", "最大处理us"));
+        for (int i = 0; i < MESSAGE_TYPES; i++)
+        {
+            long decoded = framesDecoded[i].sum();
+            long encoded = framesEncoded[i].sum();
+            long handled = handlerTimers[i].count.sum();
+            if (decoded == 0 && encoded == 0 && handled == 0)
+            {
+                continue;
+            }
+            sb.append(String.format("%-22s %12d %14d %12d %14d %12d %12.1f %12.1f%n", messageTypeName(i),
+                    decoded, bytesIn[i].sum(), encoded, bytesOut[i].sum(), handled,
+                    handlerTimers[i].average() / 1000.0, handlerTimers[i].max.get() / 1000.0));
+        }
+        sb.append(String.format("%-10s %12s %14s %12s %14s%n", "序列化算法", "序列化次数", "平均序列化ns",
+                "反序列化次数", "平均反序列化ns"));
+        for (int i = 0; i < SerializerRegistry.MAX_SERIALIZERS; i++)
+        {
+            Timer serialize = serializeTimers[i];
+            Timer deserialize = deserializeTimers[i];
+            if (serialize.count.sum() == 0 && deserialize.count.sum() == 0)
+            {
+                continue;
+            }
+            sb.append(String.format("%-10s %12d %14d %12d %14d%n", SerializerRegistry.getName(i), serialize.count.sum(),
+                    serialize.average(), deserialize.count.sum(), deserialize.average()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 所有连接出站缓冲区中待写出的字节数
+     *
+     * @return long
+     */
+    private static long pendingOutboundBytes()
+    {
+        long total = 0;
+        for (Channel channel : channels)
+        {
+            ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+            if (outboundBuffer != null)
+            {
+                total += outboundBuffer.totalPendingWriteBytes();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 所有事件循环排队中的任务数
+     *
+     * @return long
+     */
+    private static long eventLoopPendingTasks()
+    {
+        long total = 0;
+        for (EventLoopGroup eventLoopGroup : eventLoopGroups)
+        {
+            for (EventExecutor eventExecutor : eventLoopGroup)
+            {
+                if (eventExecutor instanceof SingleThreadEventExecutor)
+                {
+                    total += ((SingleThreadEventExecutor) eventExecutor).pendingTasks();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 消息类型的名称
+     *
+     * @param messageType 消息类型
+     * @return {@link String}
+     */
+    private static String messageTypeName(int messageType)
+    {
+        Class<? extends Message> messageClass = Message.getMessageClass(messageType);
+        return messageClass == null ? "type-" + messageType : messageClass.getSimpleName();
+    }
+
+    /**
+     * 按消息类型取值，跳过为 0 的
+     *
+     * @param function 取值
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    private static Map<String, Long> byMessageType(ToLongFunction<Integer> function)
+    {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < MESSAGE_TYPES; i++)
+        {
+            long value = function.applyAsLong(i);
+            if (value != 0)
+            {
+                map.put(messageTypeName(i), value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 按序列化算法取值
+     *
+     * @param function 取值
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    private static Map<String, Long> byAlgorithm(ToLongFunction<Integer> function)
+    {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < SerializerRegistry.MAX_SERIALIZERS; i++)
+        {
+            if (SerializerRegistry.isRegistered(i))
+            {
+                map.put(SerializerRegistry.getName(i), function.applyAsLong(i));
+            }
+        }
+        return map;
+    }
+
+    private static LongAdder[] newAdders(int size)
+    {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+        {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static Timer[] newTimers(int size)
+    {
+        Timer[] timers = new Timer[size];
+        for (int i = 0; i < size; i++)
+        {
+            timers[i] = new Timer();
+        }
+        return timers;
+    }
+
+    @Override
+    public int getActiveConnections()
+    {
+        return channels.size();
+    }
+
+    @Override
+    public long getIdleClosedConnections()
+    {
+        return idleClosed.sum();
+    }
+
+    @Override
+    public long getPendingOutboundBytes()
+    {
+        return pendingOutboundBytes();
+    }
+
+    @Override
+    public long getEventLoopPendingTasks()
+    {
+        return eventLoopPendingTasks();
+    }
+
+    @Override
+    public Map<String, Long> getFramesDecoded()
+    {
+        return byMessageType(i -> framesDecoded[i].sum());
+    }
+
+    @Override
+    public Map<String, Long> getFramesEncoded()
+    {
+        return byMessageType(i -> framesEncoded[i].sum());
+    }
+
+    @Override
+    public Map<String, Long> getBytesIn()
+    {
+        return byMessageType(i -> bytesIn[i].sum());
+    }
+
+    @Override
+    public Map<String, Long> getBytesOut()
+    {
+        return byMessageType(i -> bytesOut[i].sum());
+    }
+
+    @Override
+    public Map<String, Long> getHandlerCount()
+    {
+        return byMessageType(i -> handlerTimers[i].count.sum());
+    }
+
+    @Override
+    public Map<String, Long> getHandlerAverageNanos()
+    {
+        return byMessageType(i -> handlerTimers[i].average());
+    }
+
+    @Override
+    public Map<String, Long> getHandlerMaxNanos()
+    {
+        return byMessageType(i -> handlerTimers[i].max.get());
+    }
+
+    @Override
+    public Map<String, Long> getSerializeCount()
+    {
+        return byAlgorithm(i -> serializeTimers[i].count.sum());
+    }
+
+    @Override
+    public Map<String, Long> getSerializeAverageNanos()
+    {
+        return byAlgorithm(i -> serializeTimers[i].average());
+    }
+
+    @Override
+    public Map<String, Long> getDeserializeCount()
+    {
+        return byAlgorithm(i -> deserializeTimers[i].count.sum());
+    }
+
+    @Override
+    public Map<String, Long> getDeserializeAverageNanos()
+    {
+        return byAlgorithm(i -> deserializeTimers[i].average());
+    }
+
+    @Override
+    public String dump()
+    {
+        return dumpText();
+    }
+
+    @Override
+    public void reset()
+    {
+        idleClosed.reset();
+        for (int i = 0; i < MESSAGE_TYPES; i++)
+        {
+            framesDecoded[i].reset();
+            framesEncoded[i].reset();
+            bytesIn[i].reset();
+            bytesOut[i].reset();
+            handlerTimers[i].reset();
+        }
+        for (int i = 0; i < SerializerRegistry.MAX_SERIALIZERS; i++)
+        {
+            serializeTimers[i].reset();
+            deserializeTimers[i].reset();
+        }
+    }
+
+    /**
+     * 计时器：次数、总耗时和最大耗时
+     */
+    private static final class Timer
+    {
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos)
+        {
+            count.increment();
+            totalNanos.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        long average()
+        {
+            long count = this.count.sum();
+            return count == 0 ? 0 : totalNanos.sum() / count;
+        }
+
+        void reset()
+        {
+            count.reset();
+            totalNanos.reset();
+            max.reset();
+        }
+    }
+}
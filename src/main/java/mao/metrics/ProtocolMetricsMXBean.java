@@ -0,0 +1,136 @@
+package mao.metrics;
+
+import java.util.Map;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.metrics
+ * Class(类名): ProtocolMetricsMXBean
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/4
+ * Time(创建时间)： 9:20
+ * Version(版本): 1.0
+ * Description(描述)： 协议指标的 JMX 接口，按消息类型的指标以消息类名为 key
+ */
+
+public interface ProtocolMetricsMXBean
+{
+    /**
+     * 活跃连接数
+     *
+     * @return int
+     */
+    int getActiveConnections();
+
+    /**
+     * 因为空闲超时关闭的连接数
+     *
+     * @return long
+     */
+    long getIdleClosedConnections();
+
+    /**
+     * 所有连接出站缓冲区中待写出的字节数
+     *
+     * @return long
+     */
+    long getPendingOutboundBytes();
+
+    /**
+     * 所有事件循环排队中的任务数
+     *
+     * @return long
+     */
+    long getEventLoopPendingTasks();
+
+    /**
+     * 每种消息类型解码的帧数
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getFramesDecoded();
+
+    /**
+     * 每种消息类型编码的帧数
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getFramesEncoded();
+
+    /**
+     * 每种消息类型入站的字节数(含消息头)
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getBytesIn();
+
+    /**
+     * 每种消息类型出站的字节数(含消息头)
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getBytesOut();
+
+    /**
+     * 每种消息类型业务处理的次数
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getHandlerCount();
+
+    /**
+     * 每种消息类型业务处理的平均耗时，纳秒
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getHandlerAverageNanos();
+
+    /**
+     * 每种消息类型业务处理的最大耗时，纳秒
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getHandlerMaxNanos();
+
+    /**
+     * 每种序列化算法的序列化次数
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getSerializeCount();
+
+    /**
+     * 每种序列化算法的平均序列化耗时，纳秒
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getSerializeAverageNanos();
+
+    /**
+     * 每种序列化算法的反序列化次数
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getDeserializeCount();
+
+    /**
+     * 每种序列化算法的平均反序列化耗时，纳秒
+     *
+     * @return {@link Map}<{@link String}, {@link Long}>
+     */
+    Map<String, Long> getDeserializeAverageNanos();
+
+    /**
+     * 文本形式的全部指标
+     *
+     * @return {@link String}
+     */
+    String dump();
+
+    /**
+     * 清零计数器
+     */
+    void reset();
+}
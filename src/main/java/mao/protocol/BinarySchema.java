@@ -0,0 +1,570 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): BinarySchema
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/28
+ * Time(创建时间)： 10:30
+ * Version(版本): 1.0
+ * Description(描述)： 二进制序列化的类结构描述。每个类第一次使用时扫描一次字段，
+ * 为每个字段生成一个字段编解码器(内部使用 MethodHandle)，之后序列化时不再反射。
+ * 字段顺序：父类字段在前，同一个类中按字段名排序；static 和 transient 字段不参与序列化。
+ * 整数使用 zigzag 变长编码，字符串和字节数组使用 变长长度 + 内容，长度写 0 表示 null
+ */
+
+public final class BinarySchema<T>
+{
+    /**
+     * 每个类的结构只生成一次
+     */
+    private static final ClassValue<BinarySchema<?>> SCHEMAS = new ClassValue<BinarySchema<?>>()
+    {
+        @Override
+        protected BinarySchema<?> computeValue(Class<?> type)
+        {
+            return new BinarySchema<>(type);
+        }
+    };
+
+    /**
+     * 类型
+     */
+    private final Class<T> type;
+
+    /**
+     * 无参构造方法，没有时为 null，只能读取到外部创建好的对象中
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * 字段编解码器
+     */
+    private final FieldCodec[] fieldCodecs;
+
+    /**
+     * 得到某个类的结构
+     *
+     * @param type 类型
+     * @return {@link BinarySchema}<{@link T}>
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BinarySchema<T> of(Class<T> type)
+    {
+        return (BinarySchema<T>) SCHEMAS.get(type);
+    }
+
+    private BinarySchema(Class<T> type)
+    {
+        this.type = type;
+        try
+        {
+            this.constructor = findConstructor(type);
+            List<FieldCodec> codecs = new ArrayList<>();
+            for (Class<?> c : hierarchy(type))
+            {
+                Field[] fields = c.getDeclaredFields();
+                Arrays.sort(fields, Comparator.comparing(Field::getName));
+                MethodHandles.Lookup classLookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+                for (Field field : fields)
+                {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+                    {
+                        continue;
+                    }
+                    codecs.add(FieldCodec.create(classLookup, field));
+                }
+            }
+            this.fieldCodecs = codecs.toArray(new FieldCodec[0]);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalArgumentException("无法访问 " + type.getName() + " 的字段", e);
+        }
+    }
+
+    /**
+     * 查找无参构造方法
+     *
+     * @param type 类型
+     * @return {@link MethodHandle} 没有可访问的无参构造方法时返回 null
+     */
+    private static MethodHandle findConstructor(Class<?> type)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+                    .findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 父类在前的继承链，不包括 Object
+     *
+     * @param type 类型
+     * @return {@link List}<{@link Class}<{@link ?}>>
+     */
+    private static List<Class<?>> hierarchy(Class<?> type)
+    {
+        List<Class<?>> list = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass())
+        {
+            list.add(0, c);
+        }
+        return list;
+    }
+
+    /**
+     * 序列化对象到 ByteBuf
+     *
+     * @param object 对象
+     * @param out    ByteBuf
+     */
+    public void write(T object, ByteBuf out)
+    {
+        try
+        {
+            for (FieldCodec fieldCodec : fieldCodecs)
+            {
+                fieldCodec.write(object, out);
+            }
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new RuntimeException("序列化失败", e);
+        }
+    }
+
+    /**
+     * 从 ByteBuf 反序列化出对象
+     *
+     * @param in ByteBuf
+     * @return {@link T}
+     */
+    public T read(ByteBuf in)
+    {
+        if (constructor == null)
+        {
+            throw new IllegalArgumentException(type.getName() + " 缺少无参构造方法，无法使用二进制序列化");
+        }
+        Object object;
+        try
+        {
+            object = constructor.invokeExact();
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new RuntimeException("反序列化失败", e);
+        }
+        return read(type.cast(object), in);
+    }
+
+    /**
+     * 从 ByteBuf 读取字段，填充到已经创建好的对象中
+     *
+     * @param object 对象
+     * @param in     ByteBuf
+     * @return {@link T} object
+     */
+    public T read(T object, ByteBuf in)
+    {
+        try
+        {
+            for (FieldCodec fieldCodec : fieldCodecs)
+            {
+                fieldCodec.read(object, in);
+            }
+            return object;
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new CorruptedFrameException("消息正文长度不足，无法反序列化 " + type.getName(), e);
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new RuntimeException("反序列化失败", e);
+        }
+    }
+
+
+    /**
+     * 字段编解码器
+     */
+    private abstract static class FieldCodec
+    {
+        /**
+         * getter，类型为 (Object)字段类型
+         */
+        final MethodHandle getter;
+
+        /**
+         * setter，类型为 (Object,字段类型)void
+         */
+        final MethodHandle setter;
+
+        FieldCodec(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException
+        {
+            Class<?> fieldType = field.getType();
+            this.getter = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(fieldType, Object.class));
+            this.setter = lookup.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, fieldType));
+        }
+
+        abstract void write(Object object, ByteBuf out) throws Throwable;
+
+        abstract void read(Object object, ByteBuf in) throws Throwable;
+
+        /**
+         * 根据字段类型生成编解码器
+         *
+         * @param lookup lookup
+         * @param field  字段
+         * @return {@link FieldCodec}
+         * @throws IllegalAccessException 非法访问异常
+         */
+        static FieldCodec create(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException
+        {
+            Class<?> t = field.getType();
+            if (t == int.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        VarInt.writeInt(out, (int) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, VarInt.readInt(in));
+                    }
+                };
+            }
+            if (t == long.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        VarInt.writeLong(out, (long) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, VarInt.readLong(in));
+                    }
+                };
+            }
+            if (t == boolean.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        out.writeBoolean((boolean) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readBoolean());
+                    }
+                };
+            }
+            if (t == byte.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        out.writeByte((byte) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readByte());
+                    }
+                };
+            }
+            if (t == short.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        VarInt.writeInt(out, (short) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, (short) VarInt.readInt(in));
+                    }
+                };
+            }
+            if (t == char.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        VarInt.writeUnsignedInt(out, (char) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, (char) VarInt.readUnsignedInt(in));
+                    }
+                };
+            }
+            if (t == float.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        out.writeFloat((float) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readFloat());
+                    }
+                };
+            }
+            if (t == double.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        out.writeDouble((double) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readDouble());
+                    }
+                };
+            }
+            if (t == String.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        writeString(out, (String) getter.invokeExact(object));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, readString(in));
+                    }
+                };
+            }
+            if (t == byte[].class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        byte[] bytes = (byte[]) getter.invokeExact(object);
+                        if (bytes == null)
+                        {
+                            VarInt.writeUnsignedInt(out, 0);
+                            return;
+                        }
+                        VarInt.writeUnsignedInt(out, bytes.length + 1);
+                        out.writeBytes(bytes);
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        int length = readLength(in);
+                        byte[] bytes = null;
+                        if (length >= 0)
+                        {
+                            bytes = new byte[length];
+                            in.readBytes(bytes);
+                        }
+                        setter.invokeExact(object, bytes);
+                    }
+                };
+            }
+            if (t == Integer.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        Integer value = (Integer) getter.invokeExact(object);
+                        out.writeBoolean(value != null);
+                        if (value != null)
+                        {
+                            VarInt.writeInt(out, value);
+                        }
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readBoolean() ? (Integer) VarInt.readInt(in) : null);
+                    }
+                };
+            }
+            if (t == Long.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        Long value = (Long) getter.invokeExact(object);
+                        out.writeBoolean(value != null);
+                        if (value != null)
+                        {
+                            VarInt.writeLong(out, value);
+                        }
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        setter.invokeExact(object, in.readBoolean() ? (Long) VarInt.readLong(in) : null);
+                    }
+                };
+            }
+            if (t == Boolean.class)
+            {
+                return new FieldCodec(lookup, field)
+                {
+                    @Override
+                    void write(Object object, ByteBuf out) throws Throwable
+                    {
+                        Boolean value = (Boolean) getter.invokeExact(object);
+                        //0 null，1 false，2 true
+                        out.writeByte(value == null ? 0 : (value ? 2 : 1));
+                    }
+
+                    @Override
+                    void read(Object object, ByteBuf in) throws Throwable
+                    {
+                        byte b = in.readByte();
+                        setter.invokeExact(object, b == 0 ? null : (Boolean) (b == 2));
+                    }
+                };
+            }
+            throw new IllegalArgumentException("二进制序列化不支持的字段类型：" +
+                    field.getDeclaringClass().getName() + "." + field.getName() + " " + t.getName());
+        }
+    }
+
+    /**
+     * 写入字符串，变长长度(字节数+1) + UTF-8 内容，null 写 0
+     *
+     * @param out ByteBuf
+     * @param s   字符串
+     */
+    static void writeString(ByteBuf out, String s)
+    {
+        if (s == null)
+        {
+            VarInt.writeUnsignedInt(out, 0);
+            return;
+        }
+        VarInt.writeUnsignedInt(out, ByteBufUtil.utf8Bytes(s) + 1);
+        ByteBufUtil.writeUtf8(out, s);
+    }
+
+    /**
+     * 读取字符串、byte[] 的长度前缀(长度+1，0 表示 null)。
+     * 长度来自网络，先和剩余的字节数比较，不按错误的长度分配内存
+     *
+     * @param in ByteBuf
+     * @return int 长度，-1 表示 null
+     */
+    static int readLength(ByteBuf in)
+    {
+        int length = VarInt.readUnsignedInt(in) - 1;
+        if (length < -1 || length > in.readableBytes())
+        {
+            throw new CorruptedFrameException("长度错误：" + (length & 0xffffffffL) + "，剩余 " +
+                    in.readableBytes() + " 字节");
+        }
+        return length;
+    }
+
+    /**
+     * 读取字符串
+     *
+     * @param in ByteBuf
+     * @return {@link String}
+     */
+    static String readString(ByteBuf in)
+    {
+        int length = readLength(in);
+        if (length < 0)
+        {
+            return null;
+        }
+        String s = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return s;
+    }
+}
@@ -0,0 +1,300 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Enum(枚举名): CompressionAlgorithm
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/4
+ * Time(创建时间)： 15:10
+ * Version(版本): 1.0
+ * Description(描述)： 消息正文的压缩算法，序号写在消息头标志字节的低 3 位，0 表示不压缩。
+ * 压缩后的正文：变长的原始长度 + 压缩数据，解压时按原始长度一次分配，并检查不超过上限。
+ * snappy 采用 netty 自带的实现(超过 32767 字节时分块)，deflate 采用 jdk 的 Deflater/Inflater，每个线程复用一个
+ */
+
+public enum CompressionAlgorithm
+{
+    None
+            {
+                @Override
+                protected void compressData(ByteBuf in, ByteBuf out)
+                {
+                    out.writeBytes(in);
+                }
+
+                @Override
+                protected void decompressData(ByteBuf in, ByteBuf out, int originalLength)
+                {
+                    out.writeBytes(in);
+                }
+            },
+
+    Snappy
+            {
+                @Override
+                protected void compressData(ByteBuf in, ByteBuf out)
+                {
+                    io.netty.handler.codec.compression.Snappy snappy = SNAPPY.get();
+                    if (in.readableBytes() <= SNAPPY_MAX_BLOCK_LENGTH)
+                    {
+                        encodeSnappyBlock(snappy, in, out);
+                        return;
+                    }
+                    //更长的数据分块压缩，每块前面是 3 个字节的压缩后长度
+                    while (in.isReadable())
+                    {
+                        int lengthIndex = out.writerIndex();
+                        out.writeMedium(0);
+                        encodeSnappyBlock(snappy, in.readSlice(Math.min(SNAPPY_MAX_BLOCK_LENGTH, in.readableBytes())), out);
+                        out.setMedium(lengthIndex, out.writerIndex() - lengthIndex - 3);
+                    }
+                }
+
+                @Override
+                protected void decompressData(ByteBuf in, ByteBuf out, int originalLength)
+                {
+                    io.netty.handler.codec.compression.Snappy snappy = SNAPPY.get();
+                    if (originalLength <= SNAPPY_MAX_BLOCK_LENGTH)
+                    {
+                        decodeSnappyBlock(snappy, in, out);
+                        return;
+                    }
+                    while (in.isReadable())
+                    {
+                        int length = in.readUnsignedMedium();
+                        if (length > in.readableBytes())
+                        {
+                            throw new CorruptedFrameException("snappy 分块长度错误：" + length);
+                        }
+                        decodeSnappyBlock(snappy, in.readSlice(length), out);
+                    }
+                }
+            },
+
+    Deflate
+            {
+                @Override
+                protected void compressData(ByteBuf in, ByteBuf out)
+                {
+                    Deflater deflater = DEFLATER.get();
+                    try
+                    {
+                        deflater.setInput(in.nioBuffer());
+                        deflater.finish();
+                        while (!deflater.finished())
+                        {
+                            out.ensureWritable(Math.max(64, in.readableBytes() >>> 1));
+                            ByteBuffer dst = out.nioBuffer(out.writerIndex(), out.writableBytes());
+                            out.writerIndex(out.writerIndex() + deflater.deflate(dst));
+                        }
+                        in.skipBytes(in.readableBytes());
+                    }
+                    finally
+                    {
+                        deflater.reset();
+                    }
+                }
+
+                @Override
+                protected void decompressData(ByteBuf in, ByteBuf out, int originalLength)
+                {
+                    Inflater inflater = INFLATER.get();
+                    try
+                    {
+                        inflater.setInput(in.nioBuffer());
+                        ByteBuffer dst = out.nioBuffer(out.writerIndex(), originalLength);
+                        int n = inflater.inflate(dst);
+                        if (!inflater.finished())
+                        {
+                            throw new CorruptedFrameException("解压后的长度超过原始长度：" + originalLength);
+                        }
+                        out.writerIndex(out.writerIndex() + n);
+                        in.skipBytes(in.readableBytes());
+                    }
+                    catch (DataFormatException e)
+                    {
+                        throw new CorruptedFrameException("解压失败", e);
+                    }
+                    finally
+                    {
+                        inflater.reset();
+                    }
+                }
+            };
+
+    /**
+     * 解压后的最大长度，防止恶意构造的压缩数据耗尽内存
+     */
+    public static final int MAX_ORIGINAL_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * netty 的 snappy 用 short 记录匹配位置，一次最多只能正确压缩这么长的数据，更长的数据分块压缩
+     */
+    private static final int SNAPPY_MAX_BLOCK_LENGTH = Short.MAX_VALUE;
+
+    /**
+     * 每个线程复用的 snappy
+     */
+    private static final FastThreadLocal<io.netty.handler.codec.compression.Snappy> SNAPPY =
+            new FastThreadLocal<io.netty.handler.codec.compression.Snappy>()
+            {
+                @Override
+                protected io.netty.handler.codec.compression.Snappy initialValue()
+                {
+                    return new io.netty.handler.codec.compression.Snappy();
+                }
+            };
+
+    /**
+     * 每个线程复用的 Deflater
+     */
+    private static final FastThreadLocal<Deflater> DEFLATER = new FastThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        @Override
+        protected void onRemoval(Deflater value)
+        {
+            value.end();
+        }
+    };
+
+    /**
+     * 每个线程复用的 Inflater
+     */
+    private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+
+        @Override
+        protected void onRemoval(Inflater value)
+        {
+            value.end();
+        }
+    };
+
+    /**
+     * 压缩 in 的全部可读字节，写到 out
+     *
+     * @param in  原始数据
+     * @param out 压缩后的数据：变长的原始长度 + 压缩数据
+     */
+    public void compress(ByteBuf in, ByteBuf out)
+    {
+        VarInt.writeUnsignedInt(out, in.readableBytes());
+        compressData(in, out);
+    }
+
+    /**
+     * 解压 in 的全部可读字节。结果缓冲区的最大容量就是原始长度，压缩数据不会让它超出
+     *
+     * @param allocator 分配器
+     * @param in        压缩后的数据
+     * @return {@link ByteBuf} 原始数据，由调用方释放
+     */
+    public ByteBuf decompress(ByteBufAllocator allocator, ByteBuf in)
+    {
+        int originalLength = VarInt.readUnsignedInt(in);
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH)
+        {
+            throw new CorruptedFrameException("压缩前的长度错误：" + originalLength);
+        }
+        ByteBuf out = allocator.buffer(originalLength, originalLength);
+        try
+        {
+            decompressData(in, out, originalLength);
+            if (out.readableBytes() != originalLength)
+            {
+                throw new CorruptedFrameException("解压后的长度 " + out.readableBytes() +
+                        " 与原始长度 " + originalLength + " 不一致");
+            }
+            return out;
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            out.release();
+            throw new CorruptedFrameException("解压后的长度超过原始长度：" + originalLength, e);
+        }
+        catch (Throwable e)
+        {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * snappy 压缩一块数据
+     *
+     * @param snappy snappy
+     * @param in     原始数据，不超过 {@link #SNAPPY_MAX_BLOCK_LENGTH}
+     * @param out    压缩数据
+     */
+    private static void encodeSnappyBlock(io.netty.handler.codec.compression.Snappy snappy, ByteBuf in, ByteBuf out)
+    {
+        try
+        {
+            snappy.encode(in, out, in.readableBytes());
+        }
+        finally
+        {
+            snappy.reset();
+        }
+    }
+
+    /**
+     * snappy 解压一块数据
+     *
+     * @param snappy snappy
+     * @param in     一块压缩数据
+     * @param out    原始数据
+     */
+    private static void decodeSnappyBlock(io.netty.handler.codec.compression.Snappy snappy, ByteBuf in, ByteBuf out)
+    {
+        try
+        {
+            snappy.decode(in, out);
+        }
+        finally
+        {
+            snappy.reset();
+        }
+    }
+
+    /**
+     * 压缩数据
+     *
+     * @param in  原始数据
+     * @param out 压缩数据
+     */
+    protected abstract void compressData(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压数据
+     *
+     * @param in             压缩数据
+     * @param out            原始数据
+     * @param originalLength 原始长度
+     */
+    protected abstract void decompressData(ByteBuf in, ByteBuf out, int originalLength);
+}
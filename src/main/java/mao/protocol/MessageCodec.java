@@ -1,7 +1,6 @@
 package mao.protocol;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageCodec;
 import lombok.extern.slf4j.Slf4j;
@@ -27,7 +26,6 @@ import java.util.List;
  */
 
 @Slf4j
-@ChannelHandler.Sharable
 public class MessageCodec extends ByteToMessageCodec<Message>
 {
 
@@ -101,8 +99,11 @@ public class MessageCodec extends ByteToMessageCodec<Message>
         //转换成对象
         Message message = (Message) objectInputStream.readObject();
         //打印
-        log.debug("{}, {}, {}, {}, {}, {}", magicNum, version, serializerType, messageType, sequenceId, length);
-        log.debug("{}", message);
+        if (log.isDebugEnabled())
+        {
+            log.debug("{}, {}, {}, {}, {}, {}", magicNum, version, serializerType, messageType, sequenceId, length);
+            log.debug("{}", message);
+        }
         //加入到集合中
         out.add(message);
     }
@@ -1,17 +1,29 @@
 package mao.protocol;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 import mao.config.ServerConfig;
+import mao.message.BatchMessage;
+import mao.message.FileStreamMessage;
 import mao.message.Message;
+import mao.message.MessageType;
+import mao.message.MessageTypeRegistry;
+import mao.message.StreamChunkMessage;
+import mao.metrics.ProtocolMetrics;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.List;
 
 /**
@@ -25,13 +37,151 @@ import java.util.List;
  * Time(创建时间)： 15:03
  * Version(版本): 1.0
  * Description(描述)： 消息编码和解码
- * 必须和LengthFieldBasedFrameDecoder一起使用，确保接到的 ByteBuf 消息是完整的
+ * 必须和LengthFieldBasedFrameDecoder一起使用，确保接到的 ByteBuf 消息是完整的。
+ * 正文超过 stream.chunk.size 的消息拆成多个帧，除最后一帧外都带续帧标志，接收时拼接(不拷贝)后再反序列化；
+ * 流的数据块({@link StreamChunkMessage}、{@link FileStreamMessage})不经过序列化器，每帧单独交给业务处理器
  */
 
 @Slf4j
 @ChannelHandler.Sharable
 public class MessageCodecSharable extends MessageToMessageCodec<ByteBuf, Message>
 {
+    /**
+     * 魔数 1,2,3,4
+     */
+    public static final int MAGIC_NUMBER = 0x01020304;
+
+    /**
+     * 协议版本
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * 消息头长度
+     */
+    public static final int HEADER_LENGTH = 16;
+
+    /**
+     * 长度字段在消息头中的偏移量
+     */
+    public static final int LENGTH_FIELD_OFFSET = 12;
+
+    /**
+     * 消息类型在消息头中的偏移量
+     */
+    public static final int MESSAGE_TYPE_OFFSET = 6;
+
+    /**
+     * 标志字节在消息头中的偏移量
+     */
+    public static final int FLAGS_OFFSET = 11;
+
+    /**
+     * 标志字节中压缩算法占用的位
+     */
+    public static final int FLAG_COMPRESSION_MASK = 0x07;
+
+    /**
+     * 标志字节中的续帧位：后面还有同一个消息(或同一个流)的帧
+     */
+    public static final int FLAG_MORE = 0x08;
+
+    /**
+     * 旧版本的标志字节(原来的对齐填充)，等同于没有任何标志
+     */
+    public static final int LEGACY_FLAGS = 0xff;
+
+    /**
+     * 批量消息正文的最大长度，保证对端用默认的帧解码器也能收下
+     */
+    private static final int MAX_BATCH_BODY_LENGTH = ProcotolFrameDecoder.DEFAULT_MAX_FRAME_LENGTH - HEADER_LENGTH;
+
+    /**
+     * 批量消息条数字段最多占用的字节数
+     */
+    private static final int MAX_BATCH_TABLE_OVERHEAD = 5;
+
+    /**
+     * 批量消息每条表项最多占用的字节数：类型1 + 序列号5 + 长度5
+     */
+    private static final int MAX_BATCH_ENTRY_OVERHEAD = 11;
+
+    /**
+     * 消息正文大小估算，所有连接共用
+     */
+    private static final MessageSizeEstimator SIZE_ESTIMATOR = new MessageSizeEstimator();
+
+    /**
+     * 压缩算法，下标为标志字节中的压缩算法，避免每帧调用 values() 复制数组
+     */
+    private static final CompressionAlgorithm[] COMPRESSION_ALGORITHMS = CompressionAlgorithm.values();
+
+    /**
+     * 正在拼接的续帧，每个连接最多一个：同一个消息的帧由一次编码连续写出，中间不会插入其它消息的帧
+     */
+    private static final AttributeKey<ChunkedBody> CHUNKED_BODY =
+            AttributeKey.valueOf(MessageCodecSharable.class, "chunkedBody");
+
+    /**
+     * 编码使用的序列化器 id，为 -1 时按消息类型从 {@link SerializerRegistry} 中选择
+     */
+    private final int serializerId;
+
+    /**
+     * 编码按消息类型从 {@link SerializerRegistry} 中选择序列化器
+     */
+    public MessageCodecSharable()
+    {
+        this.serializerId = -1;
+    }
+
+    /**
+     * 编码使用指定的序列化算法，解码始终按消息头中的序列化方式
+     *
+     * @param serializerAlgorithm 序列化算法
+     */
+    public MessageCodecSharable(SerializerAlgorithm serializerAlgorithm)
+    {
+        this(SerializerRegistry.getId(serializerAlgorithm.name()));
+    }
+
+    /**
+     * 编码使用指定的序列化器，解码始终按消息头中的序列化方式
+     *
+     * @param serializerId 在 {@link SerializerRegistry} 中注册的序列化器 id
+     */
+    public MessageCodecSharable(int serializerId)
+    {
+        if (!SerializerRegistry.isRegistered(serializerId))
+        {
+            throw new IllegalArgumentException("未注册的序列化器 id：" + serializerId);
+        }
+        this.serializerId = serializerId;
+    }
+
+    /**
+     * 得到编码某种消息类型使用的序列化器 id
+     *
+     * @param messageType 消息类型
+     * @return int
+     */
+    private int serializerId(int messageType)
+    {
+        return serializerId >= 0 ? serializerId : SerializerRegistry.getSerializerId(messageType);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+    {
+        if (msg instanceof FileStreamMessage)
+        {
+            //文件流不一次编码成所有数据块，上一块写完再写下一块
+            new FileStreamWriter(ctx, (FileStreamMessage) msg, promise).writeNext();
+            return;
+        }
+        super.write(ctx, msg, promise);
+    }
+
     /**
      * 编码
      *
@@ -43,26 +193,420 @@ public class MessageCodecSharable extends MessageToMessageCodec<ByteBuf, Message
     @Override
     protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> outList) throws Exception
     {
-        ByteBuf out = ctx.alloc().buffer();
+        CompressionAlgorithm compressionAlgorithm = ServerConfig.getCompressionAlgorithm();
+        if (msg instanceof BatchMessage)
+        {
+            encodeBatch(ctx, (BatchMessage) msg, compressionAlgorithm, outList);
+            return;
+        }
+        if (msg instanceof StreamChunkMessage)
+        {
+            encodeStreamChunk(ctx, (StreamChunkMessage) msg, outList);
+            return;
+        }
+        int messageType = msg.getMessageType();
+        int serializerId = serializerId(messageType);
+        //按估算的大小一次分配，消息头和消息正文写在同一个缓冲区里
+        ByteBuf out = ctx.alloc().buffer(HEADER_LENGTH + SIZE_ESTIMATOR.estimate(messageType));
+        try
+        {
+            int lengthIndex = writeHeader(out, serializerId, messageType, msg.getSequenceId());
+            //消息正文直接序列化到缓冲区中
+            long startTime = ProtocolMetrics.startTime();
+            serialize(SerializerRegistry.get(serializerId), msg, out);
+            ProtocolMetrics.recordSerialize(serializerId, startTime);
+            SIZE_ESTIMATOR.record(messageType, out.writerIndex() - lengthIndex - 4);
+            finishFrame(ctx, out, lengthIndex, compressionAlgorithm);
+        }
+        catch (Throwable e)
+        {
+            out.release();
+            throw e;
+        }
+        finally
+        {
+            //已经序列化到缓冲区中，从对象池中取出的消息可以放回了
+            msg.recycle();
+        }
+        addFrame(ctx, out, messageType, outList);
+    }
+
+    /**
+     * 序列化消息正文，消息类已注册时使用注册时解析好的消息类型，不再按消息类查找
+     *
+     * @param serializer 序列化器
+     * @param message    消息
+     * @param out        ByteBuf
+     */
+    @SuppressWarnings("unchecked")
+    private static void serialize(Serializer serializer, Message message, ByteBuf out)
+    {
+        MessageType<Message> type = (MessageType<Message>) MessageTypeRegistry.find(message.getMessageType());
+        if (type != null && type.getMessageClass() == message.getClass())
+        {
+            serializer.serialize(type, message, out);
+        }
+        else
+        {
+            serializer.serialize(message, out);
+        }
+    }
+
+    /**
+     * 写消息头，长度字段先写 0
+     *
+     * @param out                 ByteBuf
+     * @param serializerId        序列化器 id
+     * @param messageType         消息类型
+     * @param sequenceId          序列号
+     * @return int 长度字段的下标，正文写完后回填
+     */
+    private static int writeHeader(ByteBuf out, int serializerId,
+                                   int messageType, int sequenceId)
+    {
         //字节的魔数，用来在第一时间判定是否是无效数据包
-        out.writeBytes(new byte[]{1, 2, 3, 4});
+        out.writeInt(MAGIC_NUMBER);
         //字节的版本，可以支持协议的升级
-        out.writeByte(1);
-        //字节的序列化方式 jdk 0 , json 1
-        out.writeByte(ServerConfig.getSerializerAlgorithm().ordinal());
+        out.writeByte(VERSION);
+        //字节的序列化方式 jdk 0 , json 1 , binary 2 , 其它为注册的第三方序列化器
+        out.writeByte(serializerId);
         //字节的指令类型
-        out.writeByte(msg.getMessageType());
+        out.writeByte(messageType);
         //4个字节，为了双工通信，提供异步能力
-        out.writeInt(msg.getSequenceId());
-        //无意义，对齐填充
-        out.writeByte(0xff);
-        //获取内容的字节数组
-        byte[] bytes = ServerConfig.getSerializerAlgorithm().serialize(msg);
-        //写入长度消息
-        out.writeInt(bytes.length);
-        //写入内容消息
-        out.writeBytes(bytes);
-        outList.add(out);
+        out.writeInt(sequenceId);
+        //标志字节，原来的对齐填充，低 3 位为压缩算法，先写 0，正文压缩后回填
+        out.writeByte(0);
+        //先占住长度字段，正文写完后回填
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        return lengthIndex;
+    }
+
+    /**
+     * 回填长度字段，正文达到配置的阈值时压缩正文，压缩后变小才使用压缩结果并在标志字节中记下压缩算法
+     *
+     * @param ctx                  ctx
+     * @param out                  整个帧
+     * @param lengthIndex          长度字段的下标
+     * @param compressionAlgorithm 压缩算法
+     */
+    private static void finishFrame(ChannelHandlerContext ctx, ByteBuf out, int lengthIndex,
+                                    CompressionAlgorithm compressionAlgorithm)
+    {
+        int bodyIndex = lengthIndex + 4;
+        int length = out.writerIndex() - bodyIndex;
+        if (compressionAlgorithm != CompressionAlgorithm.None && length >= ServerConfig.getCompressionThreshold())
+        {
+            ByteBuf compressed = ctx.alloc().buffer(length);
+            try
+            {
+                compressionAlgorithm.compress(out.slice(bodyIndex, length), compressed);
+                if (compressed.readableBytes() < length)
+                {
+                    length = compressed.readableBytes();
+                    out.writerIndex(bodyIndex);
+                    out.writeBytes(compressed);
+                    out.setByte(lengthIndex - 1, compressionAlgorithm.ordinal());
+                }
+            }
+            finally
+            {
+                compressed.release();
+            }
+        }
+        out.setInt(lengthIndex, length);
+    }
+
+    /**
+     * 把编码好的帧加入 outList。正文超过 stream.chunk.size 时拆成多个帧：每帧复制一份消息头(带上续帧标志和这一帧的长度)，
+     * 正文是原缓冲区的 slice，不拷贝；这样对端不用调大最大帧长度也能收下大消息
+     *
+     * @param ctx         ctx
+     * @param frame       完整的帧，所有权交给这个方法
+     * @param messageType 消息类型
+     * @param outList     List<Object>
+     */
+    private static void addFrame(ChannelHandlerContext ctx, ByteBuf frame, int messageType, List<Object> outList)
+    {
+        int chunkSize = ServerConfig.getStreamChunkSize();
+        if (frame.readableBytes() - HEADER_LENGTH <= chunkSize)
+        {
+            ProtocolMetrics.recordEncoded(messageType, frame.readableBytes());
+            outList.add(frame);
+            return;
+        }
+        try
+        {
+            int flags = frame.getUnsignedByte(frame.readerIndex() + FLAGS_OFFSET);
+            ByteBuf header = frame.readSlice(HEADER_LENGTH);
+            while (frame.isReadable())
+            {
+                int length = Math.min(chunkSize, frame.readableBytes());
+                ByteBuf chunkHeader = ctx.alloc().buffer(HEADER_LENGTH);
+                chunkHeader.writeBytes(header, header.readerIndex(), HEADER_LENGTH);
+                chunkHeader.setByte(FLAGS_OFFSET, length < frame.readableBytes() ? flags | FLAG_MORE : flags);
+                chunkHeader.setInt(LENGTH_FIELD_OFFSET, length);
+                outList.add(chunkHeader);
+                outList.add(frame.readRetainedSlice(length));
+                ProtocolMetrics.recordEncoded(messageType, HEADER_LENGTH + length);
+            }
+        }
+        finally
+        {
+            frame.release();
+        }
+    }
+
+    /**
+     * 编码流的数据块，正文就是数据块的内容。超过 stream.chunk.size 时同样拆成多个帧，接收端收到的是多个数据块
+     *
+     * @param ctx     ctx
+     * @param msg     数据块，编码后由 {@link MessageToMessageCodec} 释放
+     * @param outList List<Object>
+     */
+    private void encodeStreamChunk(ChannelHandlerContext ctx, StreamChunkMessage msg, List<Object> outList)
+    {
+        int chunkSize = ServerConfig.getStreamChunkSize();
+        ByteBuf content = msg.getContent();
+        int index = content.readerIndex();
+        int end = content.writerIndex();
+        do
+        {
+            int length = Math.min(chunkSize, end - index);
+            boolean more = index + length < end || !msg.isLast();
+            outList.add(streamChunkHeader(ctx, msg.getStreamId(), more, length));
+            if (length > 0)
+            {
+                outList.add(content.retainedSlice(index, length));
+            }
+            ProtocolMetrics.recordEncoded(Message.StreamChunkMessage, HEADER_LENGTH + length);
+            index += length;
+        }
+        while (index < end);
+    }
+
+    /**
+     * 写出一个文件流，每 stream.file.chunk.size 字节一帧，正文是 {@link io.netty.channel.FileRegion}，由操作系统直接发送。
+     * FileRegion 的大小不计入出站缓冲区的待写字节数，一次全部写出会绕过可写性和背压，
+     * 所以上一块写完(进入 socket 缓冲区)后才写下一块；socket 缓冲区有空间时写操作当场完成，直接循环写下一块，不递归
+     */
+    private final class FileStreamWriter implements ChannelFutureListener
+    {
+        private final ChannelHandlerContext ctx;
+
+        /**
+         * 文件流，全部写完或者写失败后释放
+         */
+        private final FileStreamMessage msg;
+
+        /**
+         * 写出文件流的 promise，最后一块写完后完成
+         */
+        private final ChannelPromise promise;
+
+        private final int chunkSize = ServerConfig.getStreamFileChunkSize();
+
+        /**
+         * 下一块相对于流开头的偏移量
+         */
+        private long offset;
+
+        FileStreamWriter(ChannelHandlerContext ctx, FileStreamMessage msg, ChannelPromise promise)
+        {
+            this.ctx = ctx;
+            this.msg = msg;
+            this.promise = promise;
+        }
+
+        /**
+         * 写下一块，当场写完的继续写，没写完的等写完的回调
+         */
+        void writeNext()
+        {
+            ChannelFuture future;
+            do
+            {
+                try
+                {
+                    future = writeChunk();
+                }
+                catch (RuntimeException e)
+                {
+                    fail(e);
+                    return;
+                }
+                if (!future.isDone())
+                {
+                    future.addListener(this);
+                    return;
+                }
+            }
+            while (next(future));
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future)
+        {
+            if (next(future))
+            {
+                writeNext();
+            }
+        }
+
+        /**
+         * 写出一块：消息头和 FileRegion
+         *
+         * @return {@link ChannelFuture} 这一块写完的 future
+         */
+        private ChannelFuture writeChunk()
+        {
+            long count = msg.getCount();
+            int length = (int) Math.min(chunkSize, count - offset);
+            ByteBuf header = streamChunkHeader(ctx, msg.getStreamId(), offset + length < count, length);
+            ChannelFuture future;
+            if (length > 0)
+            {
+                ctx.write(header);
+                future = ctx.writeAndFlush(msg.region(offset, length));
+            }
+            else
+            {
+                future = ctx.writeAndFlush(header);
+            }
+            ProtocolMetrics.recordEncoded(Message.StreamChunkMessage, HEADER_LENGTH + length);
+            offset += length;
+            return future;
+        }
+
+        /**
+         * 处理一块写完的结果
+         *
+         * @param future 这一块写完的 future
+         * @return boolean 是否还要写下一块
+         */
+        private boolean next(ChannelFuture future)
+        {
+            if (!future.isSuccess())
+            {
+                fail(future.cause());
+                return false;
+            }
+            if (offset < msg.getCount())
+            {
+                return true;
+            }
+            msg.release();
+            promise.trySuccess();
+            return false;
+        }
+
+        private void fail(Throwable cause)
+        {
+            msg.release();
+            promise.tryFailure(cause);
+        }
+    }
+
+    /**
+     * 流的数据块的消息头
+     *
+     * @param ctx      ctx
+     * @param streamId 流 id
+     * @param more     后面是否还有数据块
+     * @param length   这一块的长度
+     * @return {@link ByteBuf}
+     */
+    private ByteBuf streamChunkHeader(ChannelHandlerContext ctx, int streamId, boolean more, int length)
+    {
+        ByteBuf header = ctx.alloc().buffer(HEADER_LENGTH);
+        int lengthIndex = writeHeader(header, serializerId(Message.StreamChunkMessage),
+                Message.StreamChunkMessage, streamId);
+        header.setByte(lengthIndex - 1, more ? FLAG_MORE : 0);
+        header.setInt(lengthIndex, length);
+        return header;
+    }
+
+    /**
+     * 编码批量消息
+     * 正文：变长条数 + 每条的(类型字节, 变长序列号, 变长长度)表 + 各子消息正文。
+     * 子消息先依次序列化到一个临时缓冲区得到各自长度，再按最大帧长度和序列化器切成一个或多个批量帧
+     *
+     * @param ctx                  ctx
+     * @param batch                批量消息
+     * @param compressionAlgorithm 压缩算法
+     * @param outList              List<Object>
+     */
+    private void encodeBatch(ChannelHandlerContext ctx, BatchMessage batch,
+                             CompressionAlgorithm compressionAlgorithm, List<Object> outList)
+    {
+        List<Message> messages = batch.getMessages();
+        int count = messages.size();
+        if (count == 0)
+        {
+            return;
+        }
+        ByteBuf bodies = ctx.alloc().buffer(Math.min(MAX_BATCH_BODY_LENGTH,
+                count * SIZE_ESTIMATOR.estimate(messages.get(0).getMessageType())));
+        try
+        {
+            //每条子消息正文在 bodies 中的结束位置
+            int[] ends = new int[count];
+            //每条子消息使用的序列化器
+            int[] serializerIds = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                Message message = messages.get(i);
+                if (message instanceof BatchMessage)
+                {
+                    throw new EncoderException("批量消息不能嵌套");
+                }
+                int begin = bodies.writerIndex();
+                serializerIds[i] = serializerId(message.getMessageType());
+                long startTime = ProtocolMetrics.startTime();
+                serialize(SerializerRegistry.get(serializerIds[i]), message, bodies);
+                ProtocolMetrics.recordSerialize(serializerIds[i], startTime);
+                ends[i] = bodies.writerIndex();
+                SIZE_ESTIMATOR.record(message.getMessageType(), ends[i] - begin);
+            }
+            int first = 0;
+            while (first < count)
+            {
+                //按最大帧长度决定这一帧放多少条，至少放一条；一帧只有一个序列化方式，序列化器不同的消息放到下一帧
+                int bodyStart = first == 0 ? 0 : ends[first - 1];
+                int last = first + 1;
+                while (last < count && serializerIds[last] == serializerIds[first] &&
+                        MAX_BATCH_TABLE_OVERHEAD + (last + 1 - first) * MAX_BATCH_ENTRY_OVERHEAD +
+                                ends[last] - bodyStart <= MAX_BATCH_BODY_LENGTH)
+                {
+                    last++;
+                }
+                int bodyLength = ends[last - 1] - bodyStart;
+                ByteBuf out = ctx.alloc().buffer(HEADER_LENGTH + MAX_BATCH_TABLE_OVERHEAD +
+                        (last - first) * MAX_BATCH_ENTRY_OVERHEAD + bodyLength);
+                int lengthIndex = writeHeader(out, serializerIds[first], Message.BatchMessage, batch.getSequenceId());
+                VarInt.writeUnsignedInt(out, last - first);
+                for (int i = first; i < last; i++)
+                {
+                    Message message = messages.get(i);
+                    out.writeByte(message.getMessageType());
+                    VarInt.writeInt(out, message.getSequenceId());
+                    VarInt.writeUnsignedInt(out, ends[i] - (i == 0 ? 0 : ends[i - 1]));
+                }
+                out.writeBytes(bodies, bodyStart, bodyLength);
+                finishFrame(ctx, out, lengthIndex, compressionAlgorithm);
+                addFrame(ctx, out, Message.BatchMessage, outList);
+                first = last;
+            }
+        }
+        finally
+        {
+            bodies.release();
+            //表项写完后才能放回，放回时会清空序列号
+            for (Message message : messages)
+            {
+                message.recycle();
+            }
+        }
     }
 
 
@@ -77,33 +621,291 @@ public class MessageCodecSharable extends MessageToMessageCodec<ByteBuf, Message
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
     {
+        decodeFrame(ctx, in, out);
+    }
+
+    /**
+     * ping 的快速路径：把整个帧(retain 的 slice，不拷贝)的消息类型原地改成 pong 写回，
+     * 序列号、标志和正文(里面的请求时间)原样带回，不反序列化、不经过业务处理器，也不重新序列化。
+     * pong 从 pipeline 的尾部写出，和业务处理器的响应一样经过心跳(记录写时间)、批量(先写出攒着的消息)
+     * 和背压处理器，只有编码器不处理已经编码好的 ByteBuf。
+     * 顺序只对已经在 I/O 线程中发起的写有保证：配置了业务线程池时，还在线程池中处理、没有写出的响应会被 pong 超过
+     * 序列化器的正文带有类型信息或者关闭了快速路径时返回 false，按普通消息解码
+     *
+     * @param ctx        ctx
+     * @param in         当前帧的消息头已经读完
+     * @param frameStart 帧在 in 中的开始位置
+     * @param length     正文长度
+     * @param serializer 序列化器
+     * @return 是否已经回复
+     */
+    private static boolean replyPong(ChannelHandlerContext ctx, ByteBuf in, int frameStart, int length,
+                                     Serializer serializer)
+    {
+        if (!ServerConfig.isPingFastPathEnabled() || !serializer.isTypeAgnostic())
+        {
+            return false;
+        }
+        //正在拼接的消息中间不会夹着 ping，出现了按普通消息处理，由拼接的检查报错
+        if (ctx.channel().hasAttr(CHUNKED_BODY) && ctx.channel().attr(CHUNKED_BODY).get() != null)
+        {
+            return false;
+        }
+        int frameLength = HEADER_LENGTH + length;
+        //累积缓冲区被 slice 引用时不会被整理或者复用，改写已经读过的字节是安全的
+        ByteBuf frame = in.retainedSlice(frameStart, frameLength);
+        in.skipBytes(length);
+        frame.setByte(MESSAGE_TYPE_OFFSET, Message.PongMessage);
+        ProtocolMetrics.recordEncoded(Message.PongMessage, frameLength);
+        //从尾部写，排在 I/O 线程中已经发起的写之后；刷新由 BatchFlushHandler 合并到读完一批之后
+        ctx.channel().writeAndFlush(frame);
+        return true;
+    }
+
+    /**
+     * 从 in 中读取一个完整的帧(消息头 + 正文)，解码出的消息加入 out。
+     * 正文直接从 in 的 slice 反序列化，{@link MessageFrameDecoder} 也用它从累积缓冲区中原地解码
+     *
+     * @param ctx ctx
+     * @param in  至少包含一个完整的帧
+     * @param out List<Object>
+     */
+    static void decodeFrame(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
+    {
+        int frameStart = in.readerIndex();
         //字节的魔数，用来在第一时间判定是否是无效数据包
         int magicNum = in.readInt();
         //字节的版本，可以支持协议的升级
         byte version = in.readByte();
-        //字节的序列化方式 jdk 0 , json 1
-        byte serializerType = in.readByte();
+        //字节的序列化方式 jdk 0 , json 1 , binary 2 , 其它为注册的第三方序列化器
+        int serializerType = in.readUnsignedByte();
         //字节的指令类型
         byte messageType = in.readByte();
         //4个字节，为了双工通信，提供异步能力
         int sequenceId = in.readInt();
-        //无意义，对齐填充
-        in.readByte();
+        //标志字节，旧版本的对齐填充 0xff 当作没有标志
+        int flags = in.readUnsignedByte();
         //长度信息
         int length = in.readInt();
-        //内容
-        byte[] bytes = new byte[length];
-        in.readBytes(bytes, 0, length);
-        //得到序列化算法
-        SerializerAlgorithm serializerAlgorithm = SerializerAlgorithm.values()[serializerType];
-        //得到消息类型
-        Class<? extends Message> messageClass = Message.getMessageClass(messageType);
-        //转换
-        Message message = serializerAlgorithm.deserialize(messageClass, bytes);
-        //打印
-        log.debug("{}, {}, {}, {}, {}, {}", magicNum, version, serializerType, messageType, sequenceId, length);
-        log.debug("{}", message);
-        //加入到集合中
-        out.add(message);
+        //得到序列化器和消息类型，未注册的序列化方式和消息类型直接报错，不再往下解压和反序列化
+        Serializer serializer = SerializerRegistry.get(serializerType);
+        MessageType<?> type = MessageTypeRegistry.get(messageType);
+        //打印，先判断级别，避免每帧装箱和创建参数数组
+        if (log.isDebugEnabled())
+        {
+            log.debug("{}, {}, {}, {}, {}, {}", magicNum, version, serializerType, messageType, sequenceId, length);
+        }
+        ProtocolMetrics.recordDecoded(messageType, HEADER_LENGTH + length);
+        boolean more = flags != LEGACY_FLAGS && (flags & FLAG_MORE) != 0;
+        if (messageType == Message.PingMessage && !more && replyPong(ctx, in, frameStart, length, serializer))
+        {
+            return;
+        }
+        if (messageType == Message.StreamChunkMessage)
+        {
+            //流的数据块原样交给业务处理器，由业务处理器释放
+            out.add(new StreamChunkMessage(sequenceId, in.readRetainedSlice(length), !more));
+            return;
+        }
+        ByteBuf body;
+        ByteBuf assembled = null;
+        Attribute<ChunkedBody> attribute = ctx.channel().attr(CHUNKED_BODY);
+        ChunkedBody chunkedBody = attribute.get();
+        if (more || chunkedBody != null)
+        {
+            if (chunkedBody == null)
+            {
+                chunkedBody = new ChunkedBody(ctx.alloc(), serializerType, messageType, sequenceId, flags);
+                attribute.set(chunkedBody);
+            }
+            try
+            {
+                chunkedBody.add(serializerType, messageType, sequenceId, flags, in.readRetainedSlice(length));
+            }
+            catch (RuntimeException e)
+            {
+                attribute.set(null);
+                chunkedBody.release();
+                throw e;
+            }
+            if (more)
+            {
+                return;
+            }
+            //最后一帧，拼接好的正文按普通的消息解码
+            attribute.set(null);
+            assembled = chunkedBody.body;
+            body = assembled;
+        }
+        else
+        {
+            body = in.readSlice(length);
+        }
+        ByteBuf decompressed = null;
+        try
+        {
+            int compressionType = flags == LEGACY_FLAGS ? 0 : flags & FLAG_COMPRESSION_MASK;
+            if (compressionType != 0)
+            {
+                if (compressionType >= COMPRESSION_ALGORITHMS.length)
+                {
+                    throw new CorruptedFrameException("未知的压缩算法：" + compressionType);
+                }
+                decompressed = COMPRESSION_ALGORITHMS[compressionType].decompress(ctx.alloc(), body);
+                body = decompressed;
+            }
+            if (messageType == Message.BatchMessage)
+            {
+                //批量消息拆开往后传
+                decodeBatch(serializer, serializerType, body, out);
+                return;
+            }
+            //直接从消息正文的 slice 转换，不拷贝到 byte[]
+            long startTime = ProtocolMetrics.startTime();
+            Message message = serializer.deserialize(type, body);
+            ProtocolMetrics.recordDeserialize(serializerType, startTime);
+            if (log.isDebugEnabled())
+            {
+                log.debug("{}", message);
+            }
+            //加入到集合中
+            out.add(message);
+        }
+        finally
+        {
+            if (decompressed != null)
+            {
+                decompressed.release();
+            }
+            if (assembled != null)
+            {
+                assembled.release();
+            }
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        //连接关闭时还没收完的续帧不会再有了
+        ChunkedBody chunkedBody = ctx.channel().attr(CHUNKED_BODY).getAndSet(null);
+        if (chunkedBody != null)
+        {
+            chunkedBody.release();
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 解码批量消息，每条子消息单独加入 out
+     *
+     * @param serializer          序列化器
+     * @param serializerId        序列化器 id
+     * @param body                批量消息正文
+     * @param out                 List<Object>
+     */
+    private static void decodeBatch(Serializer serializer, int serializerId, ByteBuf body, List<Object> out)
+    {
+        int count = VarInt.readUnsignedInt(body);
+        //每条至少占3个字节的表项，先除再比较，条数很大时不会溢出
+        if (count < 0 || count > body.readableBytes() / 3)
+        {
+            throw new CorruptedFrameException("批量消息条数错误：" + (count & 0xffffffffL));
+        }
+        int[] types = new int[count];
+        int[] sequenceIds = new int[count];
+        int[] lengths = new int[count];
+        long totalLength = 0;
+        for (int i = 0; i < count; i++)
+        {
+            types[i] = body.readUnsignedByte();
+            sequenceIds[i] = VarInt.readInt(body);
+            lengths[i] = VarInt.readUnsignedInt(body);
+            if (lengths[i] < 0)
+            {
+                throw new CorruptedFrameException("批量消息中的子消息长度错误：" + (lengths[i] & 0xffffffffL));
+            }
+            totalLength += lengths[i];
+        }
+        if (totalLength > body.readableBytes())
+        {
+            throw new CorruptedFrameException("批量消息中的子消息总长度 " + totalLength + " 超过正文剩余的 " +
+                    body.readableBytes() + " 字节");
+        }
+        for (int i = 0; i < count; i++)
+        {
+            MessageType<?> type = MessageTypeRegistry.find(types[i]);
+            if (type == null || types[i] == Message.BatchMessage)
+            {
+                throw new CorruptedFrameException("批量消息中的子消息类型错误：" + types[i]);
+            }
+            long startTime = ProtocolMetrics.startTime();
+            Message message = serializer.deserialize(type, body.readSlice(lengths[i]));
+            ProtocolMetrics.recordDeserialize(serializerId, startTime);
+            message.setSequenceId(sequenceIds[i]);
+            if (log.isDebugEnabled())
+            {
+                log.debug("{}", message);
+            }
+            out.add(message);
+        }
+    }
+
+    /**
+     * 正在拼接的续帧正文，各帧正文的 slice 按顺序加入 CompositeByteBuf，不拷贝
+     */
+    private static final class ChunkedBody
+    {
+        private final int serializerType;
+
+        private final int messageType;
+
+        private final int sequenceId;
+
+        /**
+         * 除续帧位以外的标志，各帧必须一致
+         */
+        private final int flags;
+
+        private final CompositeByteBuf body;
+
+        ChunkedBody(ByteBufAllocator allocator, int serializerType, int messageType, int sequenceId, int flags)
+        {
+            this.serializerType = serializerType;
+            this.messageType = messageType;
+            this.sequenceId = sequenceId;
+            this.flags = flags & ~FLAG_MORE;
+            this.body = allocator.compositeBuffer(Integer.MAX_VALUE);
+        }
+
+        /**
+         * 加入一帧的正文
+         *
+         * @param serializerType 这一帧的序列化方式
+         * @param messageType    这一帧的消息类型
+         * @param sequenceId     这一帧的序列号
+         * @param flags          这一帧的标志
+         * @param chunk          这一帧的正文，所有权交给这个方法
+         */
+        void add(int serializerType, int messageType, int sequenceId, int flags, ByteBuf chunk)
+        {
+            if (serializerType != this.serializerType || messageType != this.messageType ||
+                    sequenceId != this.sequenceId || (flags & ~FLAG_MORE) != this.flags)
+            {
+                chunk.release();
+                throw new CorruptedFrameException("续帧与前面的帧不属于同一个消息：" + messageType + ", " + sequenceId);
+            }
+            if (body.readableBytes() + chunk.readableBytes() > ServerConfig.getStreamMaxLength())
+            {
+                chunk.release();
+                throw new TooLongFrameException("续帧拼接后的长度超过 " + ServerConfig.getStreamMaxLength());
+            }
+            body.addComponent(true, chunk);
+        }
+
+        void release()
+        {
+            body.release();
+        }
     }
 }
@@ -0,0 +1,138 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): MessageFrameDecoder
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/6
+ * Time(创建时间)： 10:35
+ * Version(版本): 1.0
+ * Description(描述)： 帧解码和消息解码合在一起的解码器，代替 {@link ProcotolFrameDecoder} + {@link MessageCodecSharable} 的解码部分。
+ * 收到的字节先检查魔数和版本(不等消息头收齐)，不对就直接关闭连接，不会先缓存到最大帧长度；
+ * 消息头收齐后读偏移 12 的长度字段，整个帧到齐后直接在累积缓冲区上解码，不再为每帧生成 slice、也少经过一个处理器。
+ * 编码仍然由 {@link MessageCodecSharable} 完成，它不处理已经解码好的消息。每个连接一个实例
+ */
+
+@Slf4j
+public class MessageFrameDecoder extends ByteToMessageDecoder
+{
+    /**
+     * 帧开头固定的字节：魔数 + 版本
+     */
+    private static final byte[] PREFIX = {
+            (byte) (MessageCodecSharable.MAGIC_NUMBER >>> 24),
+            (byte) (MessageCodecSharable.MAGIC_NUMBER >>> 16),
+            (byte) (MessageCodecSharable.MAGIC_NUMBER >>> 8),
+            (byte) MessageCodecSharable.MAGIC_NUMBER,
+            (byte) MessageCodecSharable.VERSION};
+
+    /**
+     * 最大帧长度，含消息头
+     */
+    private final int maxFrameLength;
+
+    /**
+     * 是否已经收到错误的数据，之后收到的数据全部丢弃
+     */
+    private boolean corrupted;
+
+    /**
+     * 使用默认的最大帧长度
+     */
+    public MessageFrameDecoder()
+    {
+        this(ProcotolFrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * 帧和消息解码器
+     *
+     * @param maxFrameLength 最大帧长度，含消息头
+     */
+    public MessageFrameDecoder(int maxFrameLength)
+    {
+        if (maxFrameLength < MessageCodecSharable.HEADER_LENGTH)
+        {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength +
+                    " (应该大于等于" + MessageCodecSharable.HEADER_LENGTH + ")");
+        }
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+    {
+        if (corrupted)
+        {
+            in.skipBytes(in.readableBytes());
+            return;
+        }
+        int start = in.readerIndex();
+        int readable = in.readableBytes();
+        //魔数和版本收到几个字节就检查几个字节
+        int prefixLength = Math.min(readable, PREFIX.length);
+        for (int i = 0; i < prefixLength; i++)
+        {
+            if (in.getByte(start + i) != PREFIX[i])
+            {
+                reject(ctx, in, "魔数或版本错误");
+                return;
+            }
+        }
+        if (readable < MessageCodecSharable.HEADER_LENGTH)
+        {
+            return;
+        }
+        int length = in.getInt(start + MessageCodecSharable.LENGTH_FIELD_OFFSET);
+        if (length < 0 || length > maxFrameLength - MessageCodecSharable.HEADER_LENGTH)
+        {
+            reject(ctx, in, "帧长度错误：" + length);
+            return;
+        }
+        int frameLength = MessageCodecSharable.HEADER_LENGTH + length;
+        if (readable < frameLength)
+        {
+            return;
+        }
+        try
+        {
+            MessageCodecSharable.decodeFrame(ctx, in, out);
+        }
+        catch (RuntimeException e)
+        {
+            //一帧解码失败不影响累积缓冲区中后面的帧，和分开的帧解码器一样只丢弃这一帧
+            ctx.fireExceptionCaught(e instanceof DecoderException ? e : new DecoderException(e));
+        }
+        finally
+        {
+            //跳过整个帧，下一帧从正确的位置开始
+            in.readerIndex(start + frameLength);
+        }
+    }
+
+    /**
+     * 丢弃收到的数据并关闭连接
+     *
+     * @param ctx    ctx
+     * @param in     累积缓冲区
+     * @param reason 原因
+     */
+    private void reject(ChannelHandlerContext ctx, ByteBuf in, String reason)
+    {
+        corrupted = true;
+        in.skipBytes(in.readableBytes());
+        log.warn("{}，关闭连接：{}", reason, ctx.channel());
+        ctx.close();
+    }
+}
@@ -0,0 +1,101 @@
+package mao.protocol;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): MessageSizeEstimator
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/29
+ * Time(创建时间)： 9:40
+ * Version(版本): 1.0
+ * Description(描述)： 按消息类型估算消息正文大小，编码时用来一次分配足够的缓冲区，避免写入过程中扩容。
+ * 估算值跟随最近的实际大小：变大立即扩大，连续多次明显变小才缩小，和 netty 的 AdaptiveRecvByteBufAllocator 思路一样。
+ * 多个 I/O 线程并发读写时不加锁，估算值偶尔不准只影响分配大小，不影响正确性
+ */
+
+public class MessageSizeEstimator
+{
+    /**
+     * 最小估算值
+     */
+    private static final int MIN_ESTIMATE = 16;
+
+    /**
+     * 最大估算值，更大的消息交给缓冲区自己扩容
+     */
+    private static final int MAX_ESTIMATE = 64 * 1024;
+
+    /**
+     * 连续多少次小于估算值的一半才缩小
+     */
+    private static final int SHRINK_THRESHOLD = 16;
+
+    /**
+     * 每种消息类型的估算值，下标为消息类型字节
+     */
+    private final int[] estimates = new int[256];
+
+    /**
+     * 每种消息类型连续偏小的次数
+     */
+    private final int[] shrinkCounters = new int[256];
+
+    /**
+     * 初始估算值
+     */
+    private final int initialEstimate;
+
+    public MessageSizeEstimator()
+    {
+        this(64);
+    }
+
+    public MessageSizeEstimator(int initialEstimate)
+    {
+        this.initialEstimate = Math.max(MIN_ESTIMATE, Math.min(initialEstimate, MAX_ESTIMATE));
+    }
+
+    /**
+     * 估算某种消息的正文大小
+     *
+     * @param messageType 消息类型
+     * @return int
+     */
+    public int estimate(int messageType)
+    {
+        int estimate = estimates[messageType & 0xff];
+        return estimate == 0 ? initialEstimate : estimate;
+    }
+
+    /**
+     * 记录一次实际的正文大小
+     *
+     * @param messageType 消息类型
+     * @param actualSize  实际大小
+     */
+    public void record(int messageType, int actualSize)
+    {
+        int index = messageType & 0xff;
+        int estimate = estimate(index);
+        if (actualSize > estimate)
+        {
+            //变大，按 16 字节对齐直接扩大
+            estimates[index] = Math.min(MAX_ESTIMATE, (actualSize + 15) & ~15);
+            shrinkCounters[index] = 0;
+        }
+        else if (actualSize < estimate >>> 1)
+        {
+            if (++shrinkCounters[index] >= SHRINK_THRESHOLD)
+            {
+                estimates[index] = Math.max(MIN_ESTIMATE, estimate >>> 1);
+                shrinkCounters[index] = 0;
+            }
+        }
+        else
+        {
+            shrinkCounters[index] = 0;
+        }
+    }
+}
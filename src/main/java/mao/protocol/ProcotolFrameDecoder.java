@@ -17,12 +17,17 @@ import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 
 public class ProcotolFrameDecoder extends LengthFieldBasedFrameDecoder
 {
+    /**
+     * 默认的最大帧长度
+     */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 4096;
+
     /**
      * 协议解码器，默认
      */
     public ProcotolFrameDecoder()
     {
-        this(4096, 12, 4, 0, 0);
+        this(DEFAULT_MAX_FRAME_LENGTH, MessageCodecSharable.LENGTH_FIELD_OFFSET, 4, 0, 0);
     }
 
     /**
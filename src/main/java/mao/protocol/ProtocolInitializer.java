@@ -0,0 +1,490 @@
+package mao.protocol;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.logging.LogLevel;
+import io.netty.handler.logging.LoggingHandler;
+import mao.config.ServerConfig;
+import mao.handler.BackpressureHandler;
+import mao.handler.BackpressurePolicy;
+import mao.handler.BatchFlushHandler;
+import mao.handler.HeartbeatHandler;
+import mao.handler.MessageBatchHandler;
+import mao.metrics.ProtocolMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): ProtocolInitializer
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/7
+ * Time(创建时间)： 9:40
+ * Version(版本): 1.0
+ * Description(描述)： 客户端和服务端共用的 pipeline 初始化器，保证两端的协议处理器完全一致(尤其是帧解码，
+ * 没有帧解码时 TCP 粘包、半包会让消息解码出错，也就无法在一个连接上同时发出多个请求)。
+ * 处理器的顺序：日志、合并 flush、帧解码、编解码、背压、批量、心跳(空闲处理)、业务处理器。
+ * 用 {@link #builder()} 从空的配置开始，或者用 {@link #fromConfig()} 按配置文件预先设置好，再追加业务处理器。
+ * 初始化器本身不可变，可以给多个连接(和 Bootstrap 的重连)共用
+ */
+
+public class ProtocolInitializer extends ChannelInitializer<SocketChannel>
+{
+    /**
+     * 是否登记到协议统计
+     */
+    private final boolean metrics;
+
+    /**
+     * 是否打印收发的字节
+     */
+    private final boolean wireLogging;
+
+    /**
+     * 是否加帧解码器
+     */
+    private final boolean framing;
+
+    /**
+     * 是否使用合并的帧和消息解码器
+     */
+    private final boolean fusedDecoder;
+
+    /**
+     * 最大帧长度，含消息头
+     */
+    private final int maxFrameLength;
+
+    /**
+     * 编解码器，所有连接共用
+     */
+    private final MessageCodecSharable codec;
+
+    /**
+     * 是否合并 flush
+     */
+    private final boolean flushConsolidation;
+
+    private final int flushConsolidationMaxFlushes;
+
+    private final long flushConsolidationMaxBytes;
+
+    private final long flushConsolidationMaxDelayMicros;
+
+    /**
+     * 心跳(空闲处理)的处理器，为 null 时不检测空闲
+     */
+    private final Supplier<? extends ChannelHandler> idleHandler;
+
+    /**
+     * 是否加背压处理器
+     */
+    private final boolean backpressure;
+
+    private final BackpressurePolicy backpressurePolicy;
+
+    private final int backpressureMaxQueuedMessages;
+
+    private final long backpressureSuspendTimeoutMillis;
+
+    private final boolean backpressurePauseRead;
+
+    /**
+     * 每批最多合并的消息数，0 表示不合并
+     */
+    private final int batchMaxMessages;
+
+    /**
+     * 业务处理器，每个连接调用一次得到要加入的处理器
+     */
+    private final List<Supplier<? extends ChannelHandler>> handlers;
+
+    private ProtocolInitializer(Builder builder)
+    {
+        this.metrics = builder.metrics;
+        this.wireLogging = builder.wireLogging;
+        this.framing = builder.framing;
+        this.fusedDecoder = builder.fusedDecoder;
+        this.maxFrameLength = builder.maxFrameLength;
+        this.codec = builder.codec != null ? builder.codec : new MessageCodecSharable();
+        this.flushConsolidation = builder.flushConsolidation;
+        this.flushConsolidationMaxFlushes = builder.flushConsolidationMaxFlushes;
+        this.flushConsolidationMaxBytes = builder.flushConsolidationMaxBytes;
+        this.flushConsolidationMaxDelayMicros = builder.flushConsolidationMaxDelayMicros;
+        this.idleHandler = builder.idleHandler;
+        this.backpressure = builder.backpressure;
+        this.backpressurePolicy = builder.backpressurePolicy;
+        this.backpressureMaxQueuedMessages = builder.backpressureMaxQueuedMessages;
+        this.backpressureSuspendTimeoutMillis = builder.backpressureSuspendTimeoutMillis;
+        this.backpressurePauseRead = builder.backpressurePauseRead;
+        this.batchMaxMessages = builder.batchMaxMessages;
+        this.handlers = Collections.unmodifiableList(new ArrayList<>(builder.handlers));
+    }
+
+    /**
+     * 空的配置：只有帧解码和编解码
+     *
+     * @return {@link Builder}
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * 按配置文件设置统计、日志、合并 flush、帧解码、背压和批量
+     *
+     * @return {@link Builder}
+     */
+    public static Builder fromConfig()
+    {
+        Builder builder = new Builder()
+                .metrics(true)
+                .wireLogging(ServerConfig.isWireLoggingEnabled())
+                .fusedDecoder(ServerConfig.isFusedDecoderEnabled());
+        if (ServerConfig.isFlushConsolidationEnabled())
+        {
+            builder.flushConsolidation(ServerConfig.getFlushConsolidationMaxFlushes(),
+                    ServerConfig.getFlushConsolidationMaxBytes(),
+                    ServerConfig.getFlushConsolidationMaxDelayMicros());
+        }
+        if (ServerConfig.isBackpressureEnabled())
+        {
+            builder.backpressure(ServerConfig.getBackpressurePolicy(),
+                    ServerConfig.getBackpressureMaxQueuedMessages(),
+                    ServerConfig.getBackpressureSuspendTimeoutMillis(),
+                    ServerConfig.isBackpressurePauseRead());
+        }
+        if (ServerConfig.isBatchEnabled())
+        {
+            builder.batch(ServerConfig.getBatchMaxMessages());
+        }
+        return builder;
+    }
+
+    @Override
+    protected void initChannel(SocketChannel ch) throws Exception
+    {
+        if (metrics)
+        {
+            ProtocolMetrics.registerChannel(ch);
+        }
+        ChannelPipeline pipeline = ch.pipeline();
+        if (wireLogging)
+        {
+            pipeline.addLast(new LoggingHandler(LogLevel.DEBUG));
+        }
+        if (flushConsolidation)
+        {
+            pipeline.addLast(new BatchFlushHandler(flushConsolidationMaxFlushes, flushConsolidationMaxBytes,
+                    flushConsolidationMaxDelayMicros));
+        }
+        if (framing)
+        {
+            if (fusedDecoder)
+            {
+                pipeline.addLast(new MessageFrameDecoder(maxFrameLength));
+            }
+            else
+            {
+                pipeline.addLast(new ProcotolFrameDecoder(maxFrameLength, MessageCodecSharable.LENGTH_FIELD_OFFSET,
+                        4, 0, 0));
+            }
+        }
+        //合并的解码器已经完成解码，编解码器只负责编码
+        pipeline.addLast(codec);
+        if (backpressure)
+        {
+            pipeline.addLast(new BackpressureHandler(backpressurePolicy, backpressureMaxQueuedMessages,
+                    backpressureSuspendTimeoutMillis, backpressurePauseRead));
+        }
+        if (batchMaxMessages > 0)
+        {
+            pipeline.addLast(new MessageBatchHandler(batchMaxMessages));
+        }
+        if (idleHandler != null)
+        {
+            //放在编解码之后，空闲处理器可以直接写消息(例如心跳 ping)
+            pipeline.addLast(idleHandler.get());
+        }
+        for (Supplier<? extends ChannelHandler> handler : handlers)
+        {
+            pipeline.addLast(handler.get());
+        }
+    }
+
+    /**
+     * {@link ProtocolInitializer} 的构建器
+     */
+    public static final class Builder
+    {
+        private boolean metrics;
+
+        private boolean wireLogging;
+
+        private boolean framing = true;
+
+        private boolean fusedDecoder;
+
+        private int maxFrameLength = ProcotolFrameDecoder.DEFAULT_MAX_FRAME_LENGTH;
+
+        private MessageCodecSharable codec;
+
+        private boolean flushConsolidation;
+
+        private int flushConsolidationMaxFlushes;
+
+        private long flushConsolidationMaxBytes;
+
+        private long flushConsolidationMaxDelayMicros;
+
+        private Supplier<? extends ChannelHandler> idleHandler;
+
+        private boolean backpressure;
+
+        private BackpressurePolicy backpressurePolicy;
+
+        private int backpressureMaxQueuedMessages;
+
+        private long backpressureSuspendTimeoutMillis;
+
+        private boolean backpressurePauseRead;
+
+        private int batchMaxMessages;
+
+        private final List<Supplier<? extends ChannelHandler>> handlers = new ArrayList<>();
+
+        private Builder()
+        {
+        }
+
+        /**
+         * 是否登记到协议统计(统计本身是否开启由配置文件决定)
+         *
+         * @param metrics 是否登记
+         * @return {@link Builder}
+         */
+        public Builder metrics(boolean metrics)
+        {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 是否打印收发的字节
+         *
+         * @param wireLogging 是否打印
+         * @return {@link Builder}
+         */
+        public Builder wireLogging(boolean wireLogging)
+        {
+            this.wireLogging = wireLogging;
+            return this;
+        }
+
+        /**
+         * 是否加帧解码器，默认加。不加时每次读到的数据必须正好是一个完整的帧，只适合测试
+         *
+         * @param framing 是否加
+         * @return {@link Builder}
+         */
+        public Builder framing(boolean framing)
+        {
+            this.framing = framing;
+            return this;
+        }
+
+        /**
+         * 是否使用合并的帧和消息解码器 {@link MessageFrameDecoder}，否则使用 {@link ProcotolFrameDecoder}
+         *
+         * @param fusedDecoder 是否合并
+         * @return {@link Builder}
+         */
+        public Builder fusedDecoder(boolean fusedDecoder)
+        {
+            this.fusedDecoder = fusedDecoder;
+            return this;
+        }
+
+        /**
+         * 最大帧长度
+         *
+         * @param maxFrameLength 最大帧长度，含消息头
+         * @return {@link Builder}
+         */
+        public Builder maxFrameLength(int maxFrameLength)
+        {
+            if (maxFrameLength < MessageCodecSharable.HEADER_LENGTH)
+            {
+                throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength +
+                        " (应该大于等于" + MessageCodecSharable.HEADER_LENGTH + ")");
+            }
+            this.maxFrameLength = maxFrameLength;
+            return this;
+        }
+
+        /**
+         * 编解码器，默认按消息类型选择序列化器
+         *
+         * @param codec 编解码器，所有连接共用
+         * @return {@link Builder}
+         */
+        public Builder codec(MessageCodecSharable codec)
+        {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * 合并 flush
+         *
+         * @param maxFlushes     最多攒多少次 flush
+         * @param maxBytes       最多攒多少字节
+         * @param maxDelayMicros 不在读的过程中时最多延迟多久，微秒
+         * @return {@link Builder}
+         */
+        public Builder flushConsolidation(int maxFlushes, long maxBytes, long maxDelayMicros)
+        {
+            this.flushConsolidation = true;
+            this.flushConsolidationMaxFlushes = maxFlushes;
+            this.flushConsolidationMaxBytes = maxBytes;
+            this.flushConsolidationMaxDelayMicros = maxDelayMicros;
+            return this;
+        }
+
+        /**
+         * 心跳和空闲连接管理，由所有连接共用的时间轮驱动，见 {@link HeartbeatHandler}
+         *
+         * @param pingIntervalMillis 写空闲多久发送 ping，毫秒，0 表示不发送
+         * @param readTimeoutMillis  读空闲多久关闭连接，毫秒，0 表示不关闭
+         * @return {@link Builder}
+         */
+        public Builder heartbeat(long pingIntervalMillis, long readTimeoutMillis)
+        {
+            if (pingIntervalMillis < 0 || readTimeoutMillis < 0)
+            {
+                throw new IllegalArgumentException("pingIntervalMillis: " + pingIntervalMillis +
+                        ", readTimeoutMillis: " + readTimeoutMillis + " (不能小于0)");
+            }
+            if (pingIntervalMillis == 0 && readTimeoutMillis == 0)
+            {
+                this.idleHandler = null;
+                return this;
+            }
+            return idleHandler(new Supplier<ChannelHandler>()
+            {
+                @Override
+                public ChannelHandler get()
+                {
+                    return new HeartbeatHandler(pingIntervalMillis, readTimeoutMillis);
+                }
+            });
+        }
+
+        /**
+         * 自定义的空闲处理器，代替 {@link #heartbeat}
+         *
+         * @param idleHandler 处理器的工厂，每个连接调用一次，为 null 时不检测空闲
+         * @return {@link Builder}
+         */
+        public Builder idleHandler(Supplier<? extends ChannelHandler> idleHandler)
+        {
+            this.idleHandler = idleHandler;
+            return this;
+        }
+
+        /**
+         * 背压
+         *
+         * @param policy               策略
+         * @param maxQueuedMessages    最多排队的消息数
+         * @param suspendTimeoutMillis 挂起超时时间，毫秒
+         * @param pauseRead            是否暂停读
+         * @return {@link Builder}
+         */
+        public Builder backpressure(BackpressurePolicy policy, int maxQueuedMessages, long suspendTimeoutMillis,
+                                    boolean pauseRead)
+        {
+            this.backpressure = true;
+            this.backpressurePolicy = policy;
+            this.backpressureMaxQueuedMessages = maxQueuedMessages;
+            this.backpressureSuspendTimeoutMillis = suspendTimeoutMillis;
+            this.backpressurePauseRead = pauseRead;
+            return this;
+        }
+
+        /**
+         * 批量发送
+         *
+         * @param maxMessages 每批最多合并的消息数，至少为2
+         * @return {@link Builder}
+         */
+        public Builder batch(int maxMessages)
+        {
+            //和 MessageBatchHandler 的检查一致，构建时就报错，不等到连接建立时才失败
+            if (maxMessages < 2)
+            {
+                throw new IllegalArgumentException("maxMessages: " + maxMessages + " (应该大于等于2)");
+            }
+            this.batchMaxMessages = maxMessages;
+            return this;
+        }
+
+        /**
+         * 追加业务处理器，所有连接共用同一个实例，不是 {@link ChannelHandler.Sharable} 的处理器只能用于一个连接
+         *
+         * @param handler 处理器
+         * @return {@link Builder}
+         */
+        public Builder handler(ChannelHandler handler)
+        {
+            if (handler == null)
+            {
+                throw new NullPointerException("handler");
+            }
+            this.handlers.add(new Supplier<ChannelHandler>()
+            {
+                @Override
+                public ChannelHandler get()
+                {
+                    return handler;
+                }
+            });
+            return this;
+        }
+
+        /**
+         * 追加业务处理器，每个连接调用一次工厂创建新的实例
+         *
+         * @param factory 工厂
+         * @return {@link Builder}
+         */
+        public Builder handler(Supplier<? extends ChannelHandler> factory)
+        {
+            if (factory == null)
+            {
+                throw new NullPointerException("factory");
+            }
+            this.handlers.add(factory);
+            return this;
+        }
+
+        /**
+         * 构建初始化器
+         *
+         * @return {@link ProtocolInitializer}
+         */
+        public ProtocolInitializer build()
+        {
+            return new ProtocolInitializer(this);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package mao.protocol;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -12,18 +16,77 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Date(创建日期)： 2023/3/26
  * Time(创建时间)： 21:06
  * Version(版本): 1.0
- * Description(描述)： 序列 ID 生成器，内部采用CAS的方式累加
+ * Description(描述)： 序列 ID 生成器，每个连接一个，作为 channel 的属性保存，不同连接之间不再争用同一个计数器。
+ * 序列号从 1 开始递增，到 Integer.MAX_VALUE 之后回到 1；0 保留，表示消息不需要关联请求和响应。
+ * 同一个连接上可能有多个线程同时发请求，内部采用CAS的方式累加
  */
 
-public class SequenceIdGenerator
+public final class SequenceIdGenerator
 {
     /**
-     * id
+     * channel 属性
+     */
+    private static final AttributeKey<SequenceIdGenerator> KEY = AttributeKey.valueOf("sequenceIdGenerator");
+
+    /**
+     * id 的原子更新器
+     */
+    private static final AtomicIntegerFieldUpdater<SequenceIdGenerator> ID_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(SequenceIdGenerator.class, "id");
+
+    /**
+     * 上一次分配的 id
      */
-    private static final AtomicInteger id = new AtomicInteger();
+    private volatile int id;
 
-    public static int nextId()
+    /**
+     * 得到连接的序列 ID 生成器，没有就创建一个
+     *
+     * @param channel 连接
+     * @return {@link SequenceIdGenerator}
+     */
+    public static SequenceIdGenerator of(Channel channel)
+    {
+        Attribute<SequenceIdGenerator> attribute = channel.attr(KEY);
+        SequenceIdGenerator generator = attribute.get();
+        if (generator == null)
+        {
+            SequenceIdGenerator newGenerator = new SequenceIdGenerator();
+            generator = attribute.setIfAbsent(newGenerator);
+            if (generator == null)
+            {
+                generator = newGenerator;
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * 为连接分配下一个序列 ID
+     *
+     * @param channel 连接
+     * @return int
+     */
+    public static int nextId(Channel channel)
+    {
+        return of(channel).next();
+    }
+
+    /**
+     * 下一个序列 ID，不会返回 0
+     *
+     * @return int
+     */
+    public int next()
     {
-        return id.incrementAndGet();
+        for (; ; )
+        {
+            int current = id;
+            int next = current == Integer.MAX_VALUE ? 1 : current + 1;
+            if (ID_UPDATER.compareAndSet(this, current, next))
+            {
+                return next;
+            }
+        }
     }
 }
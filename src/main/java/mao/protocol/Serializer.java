@@ -1,5 +1,9 @@
 package mao.protocol;
 
+import io.netty.buffer.ByteBuf;
+import mao.message.Message;
+import mao.message.MessageType;
+
 import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
@@ -15,6 +19,7 @@ import java.nio.charset.StandardCharsets;
  * Time(创建时间)： 21:10
  * Version(版本): 1.0
  * Description(描述)： 用于扩展序列化、反序列化算法
+ * ByteBuf 相关的方法直接读写网络缓冲区，默认实现退化为 byte[] 方法，实现类应尽量重写以避免拷贝
  */
 
 public interface Serializer
@@ -36,4 +41,68 @@ public interface Serializer
      */
     <T> byte[] serialize(T object);
 
+    /**
+     * 从 ByteBuf 反序列化，读取 in 中全部可读的字节
+     * 编解码器传入的是消息正文的 slice，不需要拷贝
+     *
+     * @param clazz clazz
+     * @param in    消息正文
+     * @return {@link T}
+     */
+    default <T> T deserialize(Class<T> clazz, ByteBuf in)
+    {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(clazz, bytes);
+    }
+
+    /**
+     * 序列化到 ByteBuf，直接写入出站缓冲区
+     *
+     * @param object 对象
+     * @param out    ByteBuf
+     */
+    default <T> void serialize(T object, ByteBuf out)
+    {
+        out.writeBytes(serialize(object));
+    }
+
+    /**
+     * 按注册的消息类型反序列化，编解码器使用这个方法。
+     * 自己创建对象再填充字段的实现可以重写，用消息类型的工厂创建对象
+     *
+     * @param messageType 消息类型
+     * @param in          消息正文
+     * @return {@link T}
+     */
+    default <T extends Message> T deserialize(MessageType<T> messageType, ByteBuf in)
+    {
+        return deserialize(messageType.getMessageClass(), in);
+    }
+
+    /**
+     * 按注册的消息类型序列化，编解码器使用这个方法。
+     * 需要按消息类生成结构的实现可以重写，直接使用注册时解析好的结构
+     *
+     * @param messageType 消息类型
+     * @param message     消息
+     * @param out         ByteBuf
+     */
+    default <T extends Message> void serialize(MessageType<T> messageType, T message, ByteBuf out)
+    {
+        serialize(message, out);
+    }
+
+    /**
+     * 序列化结果中是否不含类名等类型信息，即字段相同的两个消息类的正文可以互相反序列化。
+     * 返回 true 时编解码器直接把 ping 帧的消息类型改成 pong 写回，不反序列化也不重新序列化；
+     * 不确定时保持默认的 false，ping 按普通消息交给业务处理器
+     *
+     * @return boolean
+     */
+    default boolean isTypeAgnostic()
+    {
+        return false;
+    }
+
 }
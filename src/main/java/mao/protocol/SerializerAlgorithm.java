@@ -1,6 +1,13 @@
 package mao.protocol;
 
 import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import mao.message.Message;
+import mao.message.MessageType;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -15,7 +22,7 @@ import java.nio.charset.StandardCharsets;
  * Date(创建日期)： 2023/3/26
  * Time(创建时间)： 21:12
  * Version(版本): 1.0
- * Description(描述)： 序列化算法，json采用fastjson
+ * Description(描述)： 序列化算法，json采用fastjson，binary采用按类生成的字段编解码器({@link BinarySchema})
  */
 
 public enum SerializerAlgorithm implements Serializer
@@ -28,7 +35,7 @@ public enum SerializerAlgorithm implements Serializer
                     try
                     {
                         ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
-                        return (T) objectInputStream.readObject();
+                        return clazz.cast(objectInputStream.readObject());
                     }
                     catch (IOException | ClassNotFoundException e)
                     {
@@ -51,6 +58,32 @@ public enum SerializerAlgorithm implements Serializer
                         throw new RuntimeException("序列化失败", e);
                     }
                 }
+
+                @Override
+                public <T> T deserialize(Class<T> clazz, ByteBuf in)
+                {
+                    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufInputStream(in)))
+                    {
+                        return clazz.cast(objectInputStream.readObject());
+                    }
+                    catch (IOException | ClassNotFoundException e)
+                    {
+                        throw new RuntimeException("反序列化失败", e);
+                    }
+                }
+
+                @Override
+                public <T> void serialize(T object, ByteBuf out)
+                {
+                    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new ByteBufOutputStream(out)))
+                    {
+                        objectOutputStream.writeObject(object);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException("序列化失败", e);
+                    }
+                }
             },
 
     Json
@@ -68,5 +101,98 @@ public enum SerializerAlgorithm implements Serializer
                     String jsonString = JSON.toJSONString(object);
                     return jsonString.getBytes(StandardCharsets.UTF_8);
                 }
+
+                @Override
+                public <T> T deserialize(Class<T> clazz, ByteBuf in)
+                {
+                    int length = in.readableBytes();
+                    if (in.hasArray())
+                    {
+                        //堆缓冲区直接解析底层数组
+                        T t = JSON.parseObject(in.array(), in.arrayOffset() + in.readerIndex(), length,
+                                StandardCharsets.UTF_8, clazz);
+                        in.skipBytes(length);
+                        return t;
+                    }
+                    try
+                    {
+                        return JSON.parseObject(new ByteBufInputStream(in), StandardCharsets.UTF_8, clazz);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException("反序列化失败", e);
+                    }
+                }
+
+                @Override
+                public <T> void serialize(T object, ByteBuf out)
+                {
+                    try
+                    {
+                        JSON.writeJSONString(new ByteBufOutputStream(out), StandardCharsets.UTF_8, object);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException("序列化失败", e);
+                    }
+                }
+
+                @Override
+                public boolean isTypeAgnostic()
+                {
+                    //没有开启 WriteClassName，只有字段名和值
+                    return true;
+                }
+            },
+
+    Binary
+            {
+                @Override
+                public <T> T deserialize(Class<T> clazz, byte[] bytes)
+                {
+                    return BinarySchema.of(clazz).read(Unpooled.wrappedBuffer(bytes));
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T> byte[] serialize(T object)
+                {
+                    ByteBuf buf = Unpooled.buffer(64);
+                    BinarySchema.of((Class<T>) object.getClass()).write(object, buf);
+                    return ByteBufUtil.getBytes(buf);
+                }
+
+                @Override
+                public <T> T deserialize(Class<T> clazz, ByteBuf in)
+                {
+                    return BinarySchema.of(clazz).read(in);
+                }
+
+                @Override
+                public <T extends Message> T deserialize(MessageType<T> messageType, ByteBuf in)
+                {
+                    //用注册的工厂创建对象，再按注册时解析好的字段结构读取
+                    return messageType.getSchema().read(messageType.newInstance(), in);
+                }
+
+                @Override
+                public <T extends Message> void serialize(MessageType<T> messageType, T message, ByteBuf out)
+                {
+                    messageType.getSchema().write(message, out);
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public <T> void serialize(T object, ByteBuf out)
+                {
+                    BinarySchema.of((Class<T>) object.getClass()).write(object, out);
+                }
+
+                @Override
+                public boolean isTypeAgnostic()
+                {
+                    //只按字段顺序写值，字段相同的类布局相同
+                    return true;
+                }
             }
 }
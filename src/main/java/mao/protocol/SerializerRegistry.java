@@ -0,0 +1,312 @@
+package mao.protocol;
+
+import io.netty.handler.codec.CorruptedFrameException;
+import lombok.extern.slf4j.Slf4j;
+import mao.config.ServerConfig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): SerializerRegistry
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/5
+ * Time(创建时间)： 10:20
+ * Version(版本): 1.0
+ * Description(描述)： 序列化器注册表。每个序列化器注册在一个固定的 id(0-255)下，id 就是消息头中的序列化方式字节，
+ * 不再依赖枚举的顺序；解码时直接用 id 查预先建好的数组。
+ * 内置的 Java、Json、Binary 固定为 0、1、2，第三方的实现(例如 Kryo、Protobuf)可以调用 {@link #register}
+ * 或者在配置文件中用 serializer.custom.id=类名 注册。
+ * 每种消息类型可以单独指定序列化器(serializer.message.消息类型=名称)，没有指定的使用 serializer.algorithm。
+ * 注册和指定应该在启动时、开始收发消息之前完成；配置文件重新加载后按新的配置重新指定。
+ * 配置监听线程修改时复制出新的数组，写完后通过 volatile 字段整体发布(和 ServerConfig 的 current 一样)，
+ * 事件循环线程读到的总是一个完整的数组
+ */
+
+@Slf4j
+public final class SerializerRegistry
+{
+    /**
+     * 序列化器 id 的个数，id 是一个无符号字节
+     */
+    public static final int MAX_SERIALIZERS = 256;
+
+    /**
+     * 下标为 id，发布后不再修改
+     */
+    private static volatile Serializer[] serializers = new Serializer[MAX_SERIALIZERS];
+
+    /**
+     * 下标为 id，发布后不再修改
+     */
+    private static volatile String[] names = new String[MAX_SERIALIZERS];
+
+    /**
+     * 每种消息类型使用的序列化器 id，下标为消息类型字节，-1 表示使用默认的序列化器，发布后不再修改
+     */
+    private static volatile int[] messageSerializerIds = newMessageSerializerIds();
+
+    /**
+     * 默认的序列化器 id
+     */
+    private static volatile int defaultSerializerId;
+
+    /**
+     * 上一次从配置文件中读到的按消息类型指定的序列化器，重新加载时用来撤销配置文件中删掉的指定
+     */
+    private static Map<Integer, String> configuredMessageSerializers = Collections.emptyMap();
+
+    static
+    {
+        register(0, SerializerAlgorithm.Java.name(), SerializerAlgorithm.Java);
+        register(1, SerializerAlgorithm.Json.name(), SerializerAlgorithm.Json);
+        register(2, SerializerAlgorithm.Binary.name(), SerializerAlgorithm.Binary);
+        applyConfig();
+        ServerConfig.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                applyConfig();
+            }
+        });
+    }
+
+    private SerializerRegistry()
+    {
+    }
+
+    private static int[] newMessageSerializerIds()
+    {
+        int[] ids = new int[256];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    /**
+     * 按配置注册第三方序列化器、设置默认的序列化器和按消息类型指定的序列化器。
+     * 配置重新加载时也会调用：已经注册过的 id 不会重新注册，需要重启才能替换实现
+     */
+    private static synchronized void applyConfig()
+    {
+        for (Map.Entry<Integer, String> entry : ServerConfig.getCustomSerializers().entrySet())
+        {
+            if (!isRegistered(entry.getKey()))
+            {
+                registerClass(entry.getKey(), entry.getValue());
+            }
+        }
+        //先全部解析，有错误时不改变现有的设置
+        int defaultId = getId(ServerConfig.getSerializerName());
+        Map<Integer, String> messageSerializers = ServerConfig.getMessageSerializers();
+        int[] ids = messageSerializerIds.clone();
+        for (Integer messageType : configuredMessageSerializers.keySet())
+        {
+            if (!messageSerializers.containsKey(messageType))
+            {
+                ids[messageType] = -1;
+            }
+        }
+        for (Map.Entry<Integer, String> entry : messageSerializers.entrySet())
+        {
+            checkMessageType(entry.getKey());
+            ids[entry.getKey()] = getId(entry.getValue());
+        }
+        messageSerializerIds = ids;
+        configuredMessageSerializers = messageSerializers;
+        defaultSerializerId = defaultId;
+    }
+
+    /**
+     * 注册序列化器
+     *
+     * @param id         序列化器 id，写在消息头中，两端必须一致
+     * @param name       名称，配置文件中用名称引用
+     * @param serializer 序列化器
+     */
+    public static synchronized void register(int id, String name, Serializer serializer)
+    {
+        checkId(id);
+        if (name == null || serializer == null)
+        {
+            throw new NullPointerException("name 和 serializer 不能为空");
+        }
+        if (serializers[id] != null)
+        {
+            throw new IllegalStateException("序列化器 id " + id + " 已经注册为 " + names[id]);
+        }
+        for (int i = 0; i < MAX_SERIALIZERS; i++)
+        {
+            if (name.equals(names[i]))
+            {
+                throw new IllegalStateException("序列化器名称 " + name + " 已经注册为 id " + i);
+            }
+        }
+        String[] newNames = names.clone();
+        newNames[id] = name;
+        Serializer[] newSerializers = serializers.clone();
+        newSerializers[id] = serializer;
+        //先发布名称，按 id 查到序列化器时名称一定已经可见
+        names = newNames;
+        serializers = newSerializers;
+        log.debug("注册序列化器：{} -> {}", id, name);
+    }
+
+    /**
+     * 按类名注册序列化器，类需要有无参构造方法，名称为类的简单名称
+     *
+     * @param id        序列化器 id
+     * @param className 类名
+     */
+    public static void registerClass(int id, String className)
+    {
+        Serializer serializer;
+        try
+        {
+            serializer = (Serializer) Class.forName(className).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e)
+        {
+            throw new IllegalArgumentException("无法创建序列化器：" + className, e);
+        }
+        register(id, serializer.getClass().getSimpleName(), serializer);
+    }
+
+    /**
+     * 指定某种消息类型使用的序列化器
+     *
+     * @param messageType  消息类型
+     * @param serializerId 序列化器 id，-1 表示使用默认的序列化器
+     */
+    public static synchronized void bind(int messageType, int serializerId)
+    {
+        checkMessageType(messageType);
+        if (serializerId != -1)
+        {
+            checkRegistered(serializerId);
+        }
+        int[] ids = messageSerializerIds.clone();
+        ids[messageType] = serializerId;
+        messageSerializerIds = ids;
+    }
+
+    /**
+     * 设置默认的序列化器
+     *
+     * @param serializerId 序列化器 id
+     */
+    public static void setDefaultSerializerId(int serializerId)
+    {
+        checkRegistered(serializerId);
+        defaultSerializerId = serializerId;
+    }
+
+    /**
+     * 某种消息类型使用的序列化器 id
+     *
+     * @param messageType 消息类型
+     * @return int
+     */
+    public static int getSerializerId(int messageType)
+    {
+        int id = messageSerializerIds[messageType & 0xff];
+        return id >= 0 ? id : defaultSerializerId;
+    }
+
+    /**
+     * 按 id 得到序列化器，解码时使用，未注册的 id 说明数据有误
+     *
+     * @param id 序列化器 id
+     * @return {@link Serializer}
+     */
+    public static Serializer get(int id)
+    {
+        Serializer serializer = serializers[id & 0xff];
+        if (serializer == null)
+        {
+            throw new CorruptedFrameException("未知的序列化方式：" + (id & 0xff));
+        }
+        return serializer;
+    }
+
+    /**
+     * 按名称得到序列化器 id，名称也可以直接是数字 id
+     *
+     * @param name 名称
+     * @return int
+     */
+    public static int getId(String name)
+    {
+        String trimmed = name.trim();
+        String[] registered = names;
+        for (int i = 0; i < MAX_SERIALIZERS; i++)
+        {
+            if (trimmed.equals(registered[i]))
+            {
+                return i;
+            }
+        }
+        try
+        {
+            int id = Integer.parseInt(trimmed);
+            checkRegistered(id);
+            return id;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("未注册的序列化器：" + name);
+        }
+    }
+
+    /**
+     * 得到序列化器的名称
+     *
+     * @param id 序列化器 id
+     * @return {@link String} 未注册时返回 null
+     */
+    public static String getName(int id)
+    {
+        return names[id & 0xff];
+    }
+
+    /**
+     * 是否已注册
+     *
+     * @param id 序列化器 id
+     * @return boolean
+     */
+    public static boolean isRegistered(int id)
+    {
+        return id >= 0 && id < MAX_SERIALIZERS && serializers[id] != null;
+    }
+
+    private static void checkId(int id)
+    {
+        if (id < 0 || id >= MAX_SERIALIZERS)
+        {
+            throw new IllegalArgumentException("序列化器 id: " + id + " (应该在0-255之间)");
+        }
+    }
+
+    private static void checkMessageType(int messageType)
+    {
+        if (messageType < 0 || messageType > 255)
+        {
+            throw new IllegalArgumentException("messageType: " + messageType + " (应该在0-255之间)");
+        }
+    }
+
+    private static void checkRegistered(int id)
+    {
+        checkId(id);
+        if (serializers[id] == null)
+        {
+            throw new IllegalArgumentException("未注册的序列化器 id：" + id);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): VarInt
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/28
+ * Time(创建时间)： 10:05
+ * Version(版本): 1.0
+ * Description(描述)： 变长整数编码工具，每个字节低7位存数据，最高位表示后面是否还有字节，
+ * 有符号数先做 zigzag 变换，小的负数也只占很少的字节
+ */
+
+public final class VarInt
+{
+    private VarInt()
+    {
+    }
+
+    /**
+     * 写入无符号变长 int
+     *
+     * @param out   ByteBuf
+     * @param value 值
+     */
+    public static void writeUnsignedInt(ByteBuf out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 读取无符号变长 int
+     *
+     * @param in ByteBuf
+     * @return int
+     */
+    public static int readUnsignedInt(ByteBuf in)
+    {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("变长 int 超过5个字节");
+    }
+
+    /**
+     * 写入无符号变长 long
+     *
+     * @param out   ByteBuf
+     * @param value 值
+     */
+    public static void writeUnsignedLong(ByteBuf out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * 读取无符号变长 long
+     *
+     * @param in ByteBuf
+     * @return long
+     */
+    public static long readUnsignedLong(ByteBuf in)
+    {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7)
+        {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("变长 long 超过10个字节");
+    }
+
+    /**
+     * 写入有符号变长 int(zigzag)
+     *
+     * @param out   ByteBuf
+     * @param value 值
+     */
+    public static void writeInt(ByteBuf out, int value)
+    {
+        writeUnsignedInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * 读取有符号变长 int(zigzag)
+     *
+     * @param in ByteBuf
+     * @return int
+     */
+    public static int readInt(ByteBuf in)
+    {
+        int n = readUnsignedInt(in);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * 写入有符号变长 long(zigzag)
+     *
+     * @param out   ByteBuf
+     * @param value 值
+     */
+    public static void writeLong(ByteBuf out, long value)
+    {
+        writeUnsignedLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * 读取有符号变长 long(zigzag)
+     *
+     * @param in ByteBuf
+     * @return long
+     */
+    public static long readLong(ByteBuf in)
+    {
+        long n = readUnsignedLong(in);
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -0,0 +1,61 @@
+package mao.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+import mao.handler.BackpressureHandler;
+import mao.handler.MessageHandler;
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.server
+ * Class(类名): HelloRequestMessageHandler
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/1
+ * Time(创建时间)： 15:00
+ * Version(版本): 1.0
+ * Description(描述)： 打招呼消息处理器，在业务线程中执行
+ */
+
+@Slf4j
+public class HelloRequestMessageHandler implements MessageHandler<HelloRequestMessage>
+{
+    @Override
+    public void handle(ChannelHandlerContext ctx, HelloRequestMessage helloRequestMessage) throws Exception
+    {
+        try
+        {
+            log.debug("打招呼消息:{}", ctx.channel());
+            //得到姓名
+            String name = helloRequestMessage.getName();
+            //得到内容
+            String body = helloRequestMessage.getBody();
+            log.debug("姓名 {} 和服务器打招呼：{}", name, body);
+            String respBody = "你好，" + name + ",非常荣幸您能和我打招呼！";
+            HelloResponseMessage helloResponseMessage = HelloResponseMessage.success(respBody);
+            //带回请求的序列号，客户端据此找到对应的请求
+            helloResponseMessage.setSequenceId(helloRequestMessage.getSequenceId());
+            //响应
+            BackpressureHandler.writeAndFlush(ctx, helloResponseMessage);
+        }
+        catch (Exception e)
+        {
+            HelloResponseMessage helloResponseMessage =
+                    HelloResponseMessage.fail("服务器异常：" + e.getMessage());
+            helloResponseMessage.setSequenceId(helloRequestMessage.getSequenceId());
+            //响应
+            BackpressureHandler.writeAndFlush(ctx, helloResponseMessage);
+        }
+    }
+
+    @Override
+    public void rejected(ChannelHandlerContext ctx, HelloRequestMessage helloRequestMessage)
+    {
+        HelloResponseMessage helloResponseMessage = HelloResponseMessage.fail("服务器繁忙，请稍后再试");
+        helloResponseMessage.setSequenceId(helloRequestMessage.getSequenceId());
+        BackpressureHandler.writeAndFlush(ctx, helloResponseMessage);
+    }
+}
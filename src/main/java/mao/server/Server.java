@@ -1,20 +1,27 @@
 package mao.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
+import mao.config.ServerConfig;
+import mao.handler.BusinessExecutors;
+import mao.handler.DispatchHandler;
 import mao.message.HelloRequestMessage;
-import mao.message.HelloResponseMessage;
 import mao.message.PingMessage;
 import mao.message.PongMessage;
-import mao.protocol.MessageCodecSharable;
-import mao.protocol.ProcotolFrameDecoder;
+import mao.metrics.ProtocolMetrics;
+import mao.protocol.ProtocolInitializer;
 import mao.protocol.SequenceIdGenerator;
+import mao.transport.TransportType;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Project name(项目名称)：Netty_自定义协议
@@ -33,73 +40,86 @@ public class Server
 {
     public static void main(String[] args)
     {
-        NioEventLoopGroup boss = new NioEventLoopGroup();
-        NioEventLoopGroup worker = new NioEventLoopGroup();
+        TransportType transportType = TransportType.current();
+        log.info("传输层：" + transportType);
+        if (ServerConfig.isConfigWatchEnabled())
+        {
+            ServerConfig.watch();
+        }
+        EventLoopGroup boss = transportType.newEventLoopGroup(transportType.acceptorCount());
+        EventLoopGroup worker = transportType.newEventLoopGroup(ServerConfig.getWorkerThreads());
+        //业务线程池，为 null 时业务处理器在 I/O 线程中执行
+        ExecutorService business = ServerConfig.getBusinessThreads() > 0 || ServerConfig.isBusinessVirtualThreads() ?
+                BusinessExecutors.newExecutor(ServerConfig.getBusinessThreads(),
+                        ServerConfig.isBusinessVirtualThreads()) : null;
+        DispatchHandler dispatchHandler = new DispatchHandler(business, ServerConfig.getBusinessMaxPendingTasks())
+                .register(HelloRequestMessage.class, new HelloRequestMessageHandler());
+        //定时输出指标的线程，格式化和打印日志不占用 I/O 线程
+        ScheduledExecutorService metricsDumper = null;
         try
         {
+            ByteBufAllocator allocator = ServerConfig.getAllocatorType().getAllocator();
             ServerBootstrap serverBootstrap = new ServerBootstrap();
-            serverBootstrap.channel(NioServerSocketChannel.class);
+            transportType.configure(serverBootstrap);
             serverBootstrap.group(boss, worker);
-            serverBootstrap.childHandler(new ChannelInitializer<SocketChannel>()
-            {
-                @Override
-                protected void initChannel(SocketChannel ch) throws Exception
-                {
-                    ch.pipeline().addLast(new LoggingHandler(LogLevel.DEBUG));
-                    ch.pipeline().addLast(new ProcotolFrameDecoder());
-                    ch.pipeline().addLast(new MessageCodecSharable());
-                    ch.pipeline().addLast(new SimpleChannelInboundHandler<PingMessage>()
-                    {
-                        @Override
-                        protected void channelRead0(ChannelHandlerContext ctx, PingMessage pingMessage) throws Exception
-                        {
-                            log.debug("ping消息:" + ctx.channel());
-                            PongMessage pongMessage = new PongMessage();
-                            pongMessage.setTime(pingMessage.getTime());
-                            ctx.writeAndFlush(pongMessage);
-                        }
-                    });
-
-                    ch.pipeline().addLast(new SimpleChannelInboundHandler<HelloRequestMessage>()
+            serverBootstrap.option(ChannelOption.SO_BACKLOG, ServerConfig.getSoBacklog());
+            serverBootstrap.option(ChannelOption.ALLOCATOR, allocator);
+            serverBootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+            serverBootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, ServerConfig.getWriteBufferWaterMark());
+            serverBootstrap.childOption(ChannelOption.RCVBUF_ALLOCATOR, ServerConfig.getRecvByteBufAllocator());
+            serverBootstrap.childHandler(ProtocolInitializer.fromConfig()
+                    //服务端不主动发心跳，只关闭长时间没有数据的连接
+                    .heartbeat(0, ServerConfig.getServerIdleTimeoutMillis())
+                    .handler(new Supplier<ChannelHandler>()
                     {
-
                         @Override
-                        protected void channelRead0(ChannelHandlerContext ctx, HelloRequestMessage helloRequestMessage)
-                                throws Exception
+                        public ChannelHandler get()
                         {
-                            try
-                            {
-                                log.debug("打招呼消息:" + ctx.channel());
-                                //得到姓名
-                                String name = helloRequestMessage.getName();
-                                //得到内容
-                                String body = helloRequestMessage.getBody();
-                                log.info("姓名 " + name + " 和服务器打招呼：" + body);
-                                //HelloResponseMessage helloResponseMessage = new HelloResponseMessage();
-                                //helloResponseMessage.setSuccess(true);
-                                String respBody = "你好，" + name + ",非常荣幸您能和我打招呼！";
-                                //helloResponseMessage.setBody(respBody);
-                                HelloResponseMessage helloResponseMessage = HelloResponseMessage.success(respBody);
-                                //响应
-                                ctx.writeAndFlush(helloResponseMessage);
-                            }
-                            catch (Exception e)
+                            //编解码器的 ping 快速路径不适用时(Java 序列化、关闭了快速路径)由这里回复，
+                            //和快速路径一样在 I/O 线程中回复，不经过业务线程池
+                            return new SimpleChannelInboundHandler<PingMessage>()
                             {
-                                //HelloResponseMessage helloResponseMessage = new HelloResponseMessage();
-                                //helloResponseMessage.setSuccess(false);
-                                //helloResponseMessage.setReason();
-                                HelloResponseMessage helloResponseMessage =
-                                        HelloResponseMessage.fail("服务器异常：" + e.getMessage());
-                                //响应
-                                ctx.writeAndFlush(helloResponseMessage);
-                            }
-
+                                @Override
+                                protected void channelRead0(ChannelHandlerContext ctx, PingMessage pingMessage)
+                                        throws Exception
+                                {
+                                    log.debug("ping消息:{}", ctx.channel());
+                                    PongMessage pongMessage = PongMessage.newInstance();
+                                    pongMessage.setTime(pingMessage.getTime());
+                                    //带回请求的序列号，客户端据此找到对应的请求
+                                    pongMessage.setSequenceId(pingMessage.getSequenceId());
+                                    //ping 已经处理完，放回对象池；pong 编码后由编码器放回
+                                    pingMessage.recycle();
+                                    ctx.writeAndFlush(pongMessage);
+                                }
+                            };
                         }
-                    });
-                }
-            });
-            Channel channel = serverBootstrap.bind(8080).sync().channel();
-            channel.closeFuture().sync();
+                    })
+                    .handler(dispatchHandler)
+                    .build());
+            ProtocolMetrics.registerEventLoopGroup(worker);
+            if (ServerConfig.isMetricsJmxEnabled())
+            {
+                ProtocolMetrics.registerMBean();
+            }
+            int dumpInterval = ServerConfig.getMetricsDumpIntervalSeconds();
+            if (dumpInterval > 0)
+            {
+                metricsDumper = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("metrics-dump", true));
+                metricsDumper.scheduleAtFixedRate(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        log.info("\n" + ProtocolMetrics.dumpText());
+                    }
+                }, dumpInterval, dumpInterval, TimeUnit.SECONDS);
+            }
+            List<Channel> channels = transportType.bind(serverBootstrap, ServerConfig.getServerPort());
+            for (Channel channel : channels)
+            {
+                channel.closeFuture().sync();
+            }
         }
         catch (InterruptedException e)
         {
@@ -110,6 +130,14 @@ public class Server
             log.debug("关闭服务");
             boss.shutdownGracefully();
             worker.shutdownGracefully();
+            if (metricsDumper != null)
+            {
+                metricsDumper.shutdown();
+            }
+            if (business != null)
+            {
+                business.shutdown();
+            }
         }
     }
 }
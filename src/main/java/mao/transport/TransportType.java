@@ -0,0 +1,255 @@
+package mao.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+import mao.config.ServerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.transport
+ * Enum(枚举名): TransportType
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/3/31
+ * Time(创建时间)： 10:20
+ * Version(版本): 1.0
+ * Description(描述)： 传输层实现。Linux 上优先使用 netty 的原生 epoll 传输(系统调用更少，支持边缘触发和 SO_REUSEPORT)，
+ * 不可用时退回 NIO。通过 transport.type 配置：auto、epoll、nio
+ */
+
+@Slf4j
+public enum TransportType
+{
+    Nio
+            {
+                @Override
+                public boolean isAvailable()
+                {
+                    return true;
+                }
+
+                @Override
+                public EventLoopGroup newEventLoopGroup(int threads)
+                {
+                    return new NioEventLoopGroup(threads);
+                }
+
+                @Override
+                public Class<? extends ServerChannel> serverChannelClass()
+                {
+                    return NioServerSocketChannel.class;
+                }
+
+                @Override
+                public Class<? extends Channel> channelClass()
+                {
+                    return NioSocketChannel.class;
+                }
+            },
+
+    Epoll
+            {
+                @Override
+                public boolean isAvailable()
+                {
+                    return io.netty.channel.epoll.Epoll.isAvailable();
+                }
+
+                @Override
+                public EventLoopGroup newEventLoopGroup(int threads)
+                {
+                    return new EpollEventLoopGroup(threads);
+                }
+
+                @Override
+                public Class<? extends ServerChannel> serverChannelClass()
+                {
+                    return EpollServerSocketChannel.class;
+                }
+
+                @Override
+                public Class<? extends Channel> channelClass()
+                {
+                    return EpollSocketChannel.class;
+                }
+
+                @Override
+                public void configure(ServerBootstrap serverBootstrap)
+                {
+                    super.configure(serverBootstrap);
+                    EpollMode epollMode = epollMode();
+                    serverBootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode);
+                    serverBootstrap.childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+                    if (ServerConfig.isTransportReusePort())
+                    {
+                        serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                    }
+                }
+
+                @Override
+                public void configure(Bootstrap bootstrap)
+                {
+                    super.configure(bootstrap);
+                    bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode());
+                }
+
+                @Override
+                public int acceptorCount()
+                {
+                    //开启 SO_REUSEPORT 后同一个端口绑定多个监听 socket，由内核做 accept 负载均衡
+                    return ServerConfig.isTransportReusePort() ? Math.max(1, ServerConfig.getTransportAcceptors()) : 1;
+                }
+
+                /**
+                 * epoll 触发模式
+                 *
+                 * @return {@link EpollMode}
+                 */
+                private EpollMode epollMode()
+                {
+                    return ServerConfig.isTransportEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+                }
+            };
+
+    /**
+     * 当前环境是否可用
+     *
+     * @return boolean
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * 创建 EventLoopGroup
+     *
+     * @param threads 线程数，0 表示 netty 默认(cpu核数*2)
+     * @return {@link EventLoopGroup}
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    /**
+     * 服务端 channel 类型
+     *
+     * @return {@link Class}<{@link ?} {@link extends} {@link ServerChannel}>
+     */
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * 客户端 channel 类型
+     *
+     * @return {@link Class}<{@link ?} {@link extends} {@link Channel}>
+     */
+    public abstract Class<? extends Channel> channelClass();
+
+    /**
+     * 服务端监听 socket 的个数
+     *
+     * @return int
+     */
+    public int acceptorCount()
+    {
+        return 1;
+    }
+
+    /**
+     * 设置服务端的 channel 类型和 socket 参数
+     *
+     * @param serverBootstrap ServerBootstrap
+     */
+    public void configure(ServerBootstrap serverBootstrap)
+    {
+        serverBootstrap.channel(serverChannelClass());
+        serverBootstrap.childOption(ChannelOption.TCP_NODELAY, ServerConfig.isTcpNoDelay());
+        if (ServerConfig.getSocketReceiveBufferSize() > 0)
+        {
+            serverBootstrap.option(ChannelOption.SO_RCVBUF, ServerConfig.getSocketReceiveBufferSize());
+            serverBootstrap.childOption(ChannelOption.SO_RCVBUF, ServerConfig.getSocketReceiveBufferSize());
+        }
+        if (ServerConfig.getSocketSendBufferSize() > 0)
+        {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, ServerConfig.getSocketSendBufferSize());
+        }
+    }
+
+    /**
+     * 设置客户端的 channel 类型和 socket 参数
+     *
+     * @param bootstrap Bootstrap
+     */
+    public void configure(Bootstrap bootstrap)
+    {
+        bootstrap.channel(channelClass());
+        bootstrap.option(ChannelOption.TCP_NODELAY, ServerConfig.isTcpNoDelay());
+        if (ServerConfig.getSocketReceiveBufferSize() > 0)
+        {
+            bootstrap.option(ChannelOption.SO_RCVBUF, ServerConfig.getSocketReceiveBufferSize());
+        }
+        if (ServerConfig.getSocketSendBufferSize() > 0)
+        {
+            bootstrap.option(ChannelOption.SO_SNDBUF, ServerConfig.getSocketSendBufferSize());
+        }
+    }
+
+    /**
+     * 绑定端口，开启 SO_REUSEPORT 时绑定多个监听 socket
+     *
+     * @param serverBootstrap ServerBootstrap
+     * @param port            端口
+     * @return {@link List}<{@link Channel}> 监听 channel
+     * @throws InterruptedException 中断异常
+     */
+    public List<Channel> bind(ServerBootstrap serverBootstrap, int port) throws InterruptedException
+    {
+        int acceptors = acceptorCount();
+        List<Channel> channels = new ArrayList<>(acceptors);
+        for (int i = 0; i < acceptors; i++)
+        {
+            channels.add(serverBootstrap.bind(port).sync().channel());
+        }
+        return channels;
+    }
+
+    /**
+     * 根据 transport.type 配置选择传输层，指定的传输层不可用时退回 NIO
+     *
+     * @return {@link TransportType}
+     */
+    public static TransportType current()
+    {
+        String type = ServerConfig.getTransportType();
+        if ("auto".equalsIgnoreCase(type))
+        {
+            return Epoll.isAvailable() ? Epoll : Nio;
+        }
+        for (TransportType transportType : values())
+        {
+            if (transportType.name().equalsIgnoreCase(type))
+            {
+                if (transportType.isAvailable())
+                {
+                    return transportType;
+                }
+                log.warn("传输层 {} 不可用，使用 NIO：{}", transportType,
+                        io.netty.channel.epoll.Epoll.unavailabilityCause());
+                return Nio;
+            }
+        }
+        throw new IllegalArgumentException("未知的传输层：" + type);
+    }
+}
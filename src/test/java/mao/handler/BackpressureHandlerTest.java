@@ -0,0 +1,212 @@
+package mao.handler;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): BackpressureHandlerTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 11:20
+ * Version(版本): 1.0
+ * Description(描述)： 出站背压：不可写时排队有上限并保持顺序、Reject 直接拒绝、暂停读取，
+ * 以及业务线程提交的写入不会因为事件循环积压让 channel 变成不可写
+ */
+
+class BackpressureHandlerTest
+{
+    @Test
+    void queuesInOrderUpToBound()
+    {
+        EmbeddedChannel channel = unwritableChannel(BackpressurePolicy.Queue, 2, false);
+        ChannelFuture a = channel.write(buffer('a'));
+        ChannelFuture b = channel.write(buffer('b'));
+        ChannelFuture c = channel.write(buffer('c'));
+        assertFalse(a.isDone());
+        assertFalse(b.isDone());
+        assertTrue(c.cause() instanceof BackpressureException);
+
+        //对端读走数据后恢复可写，排队的消息按顺序写出
+        channel.flush();
+        ByteBuf first = channel.readOutbound();
+        assertEquals(32, first.readableBytes());
+        first.release();
+        assertOutbound(channel, 'a');
+        assertOutbound(channel, 'b');
+        assertTrue(a.isSuccess());
+        assertTrue(b.isSuccess());
+        assertTrue(channel.isWritable());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void rejectPolicyFailsWritesWhileUnwritable()
+    {
+        EmbeddedChannel channel = unwritableChannel(BackpressurePolicy.Reject, 1024, false);
+        ChannelFuture future = channel.write(buffer('a'));
+        assertTrue(future.cause() instanceof BackpressureException);
+        channel.flush();
+        ReferenceCountUtil.release(channel.readOutbound());
+        assertTrue(channel.writeAndFlush(buffer('b')).isSuccess());
+        assertOutbound(channel, 'b');
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void pausesReadingWhileUnwritable()
+    {
+        EmbeddedChannel channel = unwritableChannel(BackpressurePolicy.Queue, 16, true);
+        assertFalse(channel.config().isAutoRead());
+        channel.flush();
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void queuedWritesFailWhenChannelCloses()
+    {
+        EmbeddedChannel channel = unwritableChannel(BackpressurePolicy.Queue, 16, false);
+        ChannelFuture future = channel.write(buffer('a'));
+        channel.close();
+        assertFalse(future.isSuccess());
+        assertNotNull(future.cause());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void businessThreadWritesDoNotCountAsPendingBytes() throws Exception
+    {
+        int messages = 1000;
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        try
+        {
+            LocalAddress address = new LocalAddress("backpressure-test");
+            AtomicReference<Channel> child = new AtomicReference<>();
+            CountDownLatch accepted = new CountDownLatch(1);
+            new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                    //写任务的估算大小计入待写字节时，1000 个写任务远远超过高水位线
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(1024, 4096))
+                    .childHandler(new ChannelInitializer<LocalChannel>()
+                    {
+                        @Override
+                        protected void initChannel(LocalChannel ch)
+                        {
+                            ch.pipeline().addLast(new BackpressureHandler(BackpressurePolicy.Queue, 16, 0, false));
+                            child.set(ch);
+                            accepted.countDown();
+                        }
+                    })
+                    .bind(address).sync();
+            CountDownLatch received = new CountDownLatch(messages);
+            new Bootstrap().group(group).channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter()
+                    {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg)
+                        {
+                            ReferenceCountUtil.release(msg);
+                            received.countDown();
+                        }
+                    })
+                    .connect(address).sync();
+            assertTrue(accepted.await(5, TimeUnit.SECONDS));
+            Channel channel = child.get();
+
+            //事件循环忙的时候业务线程连续提交
+            CountDownLatch release = new CountDownLatch(1);
+            channel.eventLoop().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            List<ChannelFuture> futures = new ArrayList<>();
+            for (int i = 0; i < messages; i++)
+            {
+                futures.add(BackpressureHandler.writeAndFlush(channel, Unpooled.wrappedBuffer(new byte[64])));
+            }
+            assertTrue(channel.isWritable());
+            release.countDown();
+
+            for (ChannelFuture future : futures)
+            {
+                assertTrue(future.await(5, TimeUnit.SECONDS));
+                assertTrue(future.isSuccess(), String.valueOf(future.cause()));
+            }
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    /**
+     * 先写入一个超过高水位线且没有 flush 的缓冲区，channel 变成不可写(相当于对端没有读)
+     *
+     * @param policy            策略
+     * @param maxQueuedMessages 最多排队的消息数
+     * @param pauseRead         不可写时是否暂停读取
+     * @return {@link EmbeddedChannel}
+     */
+    private static EmbeddedChannel unwritableChannel(BackpressurePolicy policy, int maxQueuedMessages,
+                                                     boolean pauseRead)
+    {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        channel.pipeline().addLast(new BackpressureHandler(policy, maxQueuedMessages, 0, pauseRead));
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+        assertFalse(channel.isWritable());
+        return channel;
+    }
+
+    private static ByteBuf buffer(char c)
+    {
+        return Unpooled.wrappedBuffer(new byte[]{(byte) c});
+    }
+
+    private static void assertOutbound(EmbeddedChannel channel, char expected)
+    {
+        ByteBuf buf = channel.readOutbound();
+        assertNotNull(buf);
+        assertEquals((byte) expected, buf.getByte(0));
+        buf.release();
+    }
+}
@@ -0,0 +1,88 @@
+package mao.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import mao.message.HelloRequestMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): DispatchHandlerTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 11:00
+ * Version(版本): 1.0
+ * Description(描述)： 业务分发：线程池拒绝执行时，每条排队中的消息都被拒绝一次，排队任务数归零
+ */
+
+class DispatchHandlerTest
+{
+    /**
+     * 第一次提交的任务先保存下来不执行，之后的提交全部拒绝
+     */
+    private static final class CapturingExecutor implements Executor
+    {
+        private Runnable captured;
+
+        @Override
+        public void execute(Runnable command)
+        {
+            if (captured != null)
+            {
+                throw new RejectedExecutionException("已关闭");
+            }
+            captured = command;
+        }
+    }
+
+    @Test
+    void rejectsEveryQueuedTaskWhenPoolRejects()
+    {
+        CapturingExecutor executor = new CapturingExecutor();
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        DispatchHandler dispatchHandler = new DispatchHandler(executor, 1000)
+                .register(HelloRequestMessage.class, new MessageHandler<HelloRequestMessage>()
+                {
+                    @Override
+                    public void handle(ChannelHandlerContext ctx, HelloRequestMessage message)
+                    {
+                        handled.incrementAndGet();
+                    }
+
+                    @Override
+                    public void rejected(ChannelHandlerContext ctx, HelloRequestMessage message)
+                    {
+                        rejected.incrementAndGet();
+                    }
+                });
+        EmbeddedChannel channel = new EmbeddedChannel(dispatchHandler);
+        for (int i = 0; i < 100; i++)
+        {
+            channel.writeInbound(new HelloRequestMessage());
+        }
+        assertEquals(100, dispatchHandler.getPendingTasks());
+
+        //一次最多执行 64 个，剩下的重新提交时被拒绝
+        executor.captured.run();
+
+        assertEquals(64, handled.get());
+        assertEquals(36, rejected.get());
+        assertEquals(0, dispatchHandler.getPendingTasks());
+
+        //之后提交的消息直接拒绝
+        channel.writeInbound(new HelloRequestMessage());
+        assertEquals(37, rejected.get());
+        assertEquals(0, dispatchHandler.getPendingTasks());
+        channel.finishAndReleaseAll();
+    }
+}
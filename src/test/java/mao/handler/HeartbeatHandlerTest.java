@@ -0,0 +1,119 @@
+package mao.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import mao.message.HelloRequestMessage;
+import mao.message.PingMessage;
+import mao.message.PongMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.handler
+ * Class(类名): HeartbeatHandlerTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 16:05
+ * Version(版本): 1.0
+ * Description(描述)： 心跳：读空闲超时关闭连接、写空闲时发送序列号为 0 的 ping、心跳的 pong 不交给业务处理器。
+ * 时间轮线程把检查放到 EmbeddedChannel 的任务队列里，测试线程轮询执行
+ */
+
+class HeartbeatHandlerTest
+{
+    @Test
+    void closesAfterReadTimeout() throws InterruptedException
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(0, 200));
+        long start = System.nanoTime();
+        await(channel, () -> !channel.isOpen());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    void readsPostponeReadTimeout() throws InterruptedException
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(0, 400));
+        for (int i = 0; i < 10; i++)
+        {
+            channel.writeInbound(new HelloRequestMessage());
+            Thread.sleep(60);
+            channel.runPendingTasks();
+            assertTrue(channel.isOpen());
+        }
+        //一直有数据可读，超过读超时的总时间也不关闭，停下来之后才关闭
+        await(channel, () -> !channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void sendsPingOnWriteIdle() throws InterruptedException
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(200, 0));
+        await(channel, () -> !channel.outboundMessages().isEmpty());
+        PingMessage pingMessage = channel.readOutbound();
+        assertEquals(0, pingMessage.getSequenceId());
+        assertTrue(pingMessage.getTime() > 0);
+        assertTrue(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void writesPostponePing() throws InterruptedException
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(400, 0));
+        for (int i = 0; i < 10; i++)
+        {
+            HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+            helloRequestMessage.setSequenceId(i + 1);
+            channel.writeOutbound(helloRequestMessage);
+            Thread.sleep(60);
+            channel.runPendingTasks();
+        }
+        //写出的只有业务消息，没有 ping
+        for (int i = 0; i < 10; i++)
+        {
+            HelloRequestMessage helloRequestMessage = channel.readOutbound();
+            assertEquals(i + 1, helloRequestMessage.getSequenceId());
+        }
+        assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void swallowsHeartbeatPongOnly()
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(0, 0));
+        PongMessage heartbeat = new PongMessage();
+        heartbeat.setSequenceId(0);
+        assertFalse(channel.writeInbound(heartbeat));
+        PongMessage response = new PongMessage();
+        response.setSequenceId(5);
+        assertTrue(channel.writeInbound(response));
+        assertSame(response, channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    /**
+     * 执行时间轮放进来的检查，直到条件成立
+     *
+     * @param channel   EmbeddedChannel
+     * @param condition 条件
+     */
+    private static void await(EmbeddedChannel channel, BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(10);
+            channel.runPendingTasks();
+        }
+    }
+}
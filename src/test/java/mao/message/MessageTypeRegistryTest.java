@@ -0,0 +1,192 @@
+package mao.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import mao.protocol.MessageCodecSharable;
+import mao.protocol.ProcotolFrameDecoder;
+import mao.protocol.SerializerAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.message
+ * Class(类名): MessageTypeRegistryTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 14:10
+ * Version(版本): 1.0
+ * Description(描述)： 消息类型注册表：未知类型直接报协议错误，没有工厂的注册直接失败，
+ * 通过工厂注册的消息类不需要无参构造方法，Binary 不支持的字段类型只在用 Binary 编解码时报错
+ */
+
+class MessageTypeRegistryTest
+{
+    /**
+     * 测试用的消息类型字节
+     */
+    private static final int TEST_MESSAGE = 200;
+
+    /**
+     * 只能通过工厂创建的消息
+     */
+    static class NoDefaultConstructorMessage extends Message
+    {
+        private String text;
+
+        NoDefaultConstructorMessage(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public int getMessageType()
+        {
+            return 201;
+        }
+    }
+
+    /**
+     * 只能通过工厂创建的消息，注册时传入工厂
+     */
+    static class FactoryMessage extends Message
+    {
+        private String text;
+
+        FactoryMessage(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public int getMessageType()
+        {
+            return 203;
+        }
+    }
+
+    /**
+     * 有二进制序列化不支持的字段，只能用 Json、Java 序列化
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class MapMessage extends Message
+    {
+        private Map<String, String> values;
+
+        @Override
+        public int getMessageType()
+        {
+            return 202;
+        }
+    }
+
+    /**
+     * 注册后可以正常收发的消息
+     */
+    static class CustomMessage extends Message
+    {
+        private String text;
+
+        private long value;
+
+        @Override
+        public int getMessageType()
+        {
+            return TEST_MESSAGE;
+        }
+    }
+
+    @Test
+    void unknownTypeIsProtocolError()
+    {
+        assertNull(MessageTypeRegistry.find(250));
+        assertThrows(CorruptedFrameException.class, () -> MessageTypeRegistry.get(250));
+    }
+
+    @Test
+    void registrationWithoutFactoryFails()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> MessageTypeRegistry.register(201, NoDefaultConstructorMessage.class));
+        assertThrows(NullPointerException.class,
+                () -> MessageTypeRegistry.register(201, NoDefaultConstructorMessage.class, null));
+        assertNull(MessageTypeRegistry.find(201));
+    }
+
+    @Test
+    void factoryRegisteredTypeRoundTripsWithoutDefaultConstructor()
+    {
+        MessageTypeRegistry.register(203, FactoryMessage.class, () -> new FactoryMessage(null));
+        FactoryMessage message = new FactoryMessage("工厂");
+        message.setSequenceId(11);
+        FactoryMessage decoded = roundTrip(message, SerializerAlgorithm.Binary);
+        assertEquals("工厂", decoded.text);
+        assertEquals(11, decoded.getSequenceId());
+    }
+
+    @Test
+    void unsupportedBinaryFieldOnlyFailsWhenBinaryIsUsed()
+    {
+        MessageTypeRegistry.register(202, MapMessage.class);
+        MapMessage message = new MapMessage();
+        message.setValues(Collections.singletonMap("k", "v"));
+        message.setSequenceId(12);
+        MapMessage decoded = roundTrip(message, SerializerAlgorithm.Json);
+        assertEquals(message.getValues(), decoded.getValues());
+        assertEquals(12, decoded.getSequenceId());
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new MessageCodecSharable(SerializerAlgorithm.Binary));
+        assertThrows(EncoderException.class, () -> encoder.writeOutbound(message));
+        assertFalse(encoder.finish());
+    }
+
+    @Test
+    void registeredTypeRoundTripsWithResolvedSchema()
+    {
+        MessageTypeRegistry.register(TEST_MESSAGE, CustomMessage.class);
+        MessageType<?> type = MessageTypeRegistry.get(TEST_MESSAGE);
+        assertSame(CustomMessage.class, type.getMessageClass());
+        assertNotNull(type.getSchema());
+
+        CustomMessage message = new CustomMessage();
+        message.text = "你好";
+        message.value = -42;
+        message.setSequenceId(5);
+        CustomMessage decoded = roundTrip(message, SerializerAlgorithm.Binary);
+        assertEquals("你好", decoded.text);
+        assertEquals(-42, decoded.value);
+        assertEquals(5, decoded.getSequenceId());
+    }
+
+    /**
+     * 用指定的序列化算法编码，再解码
+     *
+     * @param message   消息
+     * @param algorithm 序列化算法
+     * @return {@link T}
+     */
+    private static <T extends Message> T roundTrip(T message, SerializerAlgorithm algorithm)
+    {
+        EmbeddedChannel encoder = new EmbeddedChannel(new MessageCodecSharable(algorithm));
+        assertTrue(encoder.writeOutbound(message));
+        ByteBuf frame = encoder.readOutbound();
+        EmbeddedChannel decoder = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+        decoder.writeInbound(frame);
+        T decoded = decoder.readInbound();
+        assertFalse(encoder.finish());
+        assertFalse(decoder.finish());
+        return decoded;
+    }
+}
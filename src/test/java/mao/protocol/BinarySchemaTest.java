@@ -0,0 +1,194 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+import mao.message.PingMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): BinarySchemaTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 10:00
+ * Version(版本): 1.0
+ * Description(描述)： 二进制序列化：各种字段类型的往返，以及长度前缀错误、正文截断时的拒绝
+ */
+
+class BinarySchemaTest
+{
+    /**
+     * 覆盖所有支持的字段类型
+     */
+    static class AllTypes
+    {
+        int i;
+        long l;
+        boolean z;
+        byte b;
+        short s;
+        char c;
+        float f;
+        double d;
+        String text;
+        byte[] data;
+        Integer boxedInt;
+        Long boxedLong;
+        Boolean boxedBoolean;
+    }
+
+    /**
+     * 只有一个 byte[] 字段
+     */
+    static class Blob
+    {
+        byte[] data;
+    }
+
+    /**
+     * 只有一个字符串字段
+     */
+    static class Text
+    {
+        String text;
+    }
+
+    @Test
+    void roundTripMessages()
+    {
+        PingMessage pingMessage = new PingMessage();
+        pingMessage.setTime(1680000000000L);
+        pingMessage.setSequenceId(7);
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setSequenceId(-3);
+        helloRequestMessage.setName("张三");
+        helloRequestMessage.setBody("hello");
+        HelloResponseMessage helloResponseMessage = HelloResponseMessage.success("你好");
+        helloResponseMessage.setSequenceId(Integer.MAX_VALUE);
+
+        assertEquals(pingMessage, roundTrip(pingMessage, PingMessage.class));
+        assertEquals(helloRequestMessage, roundTrip(helloRequestMessage, HelloRequestMessage.class));
+        assertEquals(helloResponseMessage, roundTrip(helloResponseMessage, HelloResponseMessage.class));
+    }
+
+    @Test
+    void roundTripAllFieldTypes()
+    {
+        AllTypes value = new AllTypes();
+        value.i = Integer.MIN_VALUE;
+        value.l = Long.MAX_VALUE;
+        value.z = true;
+        value.b = -1;
+        value.s = Short.MIN_VALUE;
+        value.c = '中';
+        value.f = 1.5f;
+        value.d = -0.25;
+        value.text = "";
+        value.data = new byte[]{1, 2, 3};
+        value.boxedInt = -5;
+        value.boxedBoolean = false;
+
+        AllTypes copy = roundTrip(value, AllTypes.class);
+        assertEquals(value.i, copy.i);
+        assertEquals(value.l, copy.l);
+        assertEquals(value.z, copy.z);
+        assertEquals(value.b, copy.b);
+        assertEquals(value.s, copy.s);
+        assertEquals(value.c, copy.c);
+        assertEquals(value.f, copy.f);
+        assertEquals(value.d, copy.d);
+        assertEquals("", copy.text);
+        assertArrayEquals(value.data, copy.data);
+        assertEquals(-5, copy.boxedInt);
+        assertNull(copy.boxedLong);
+        assertEquals(false, copy.boxedBoolean);
+    }
+
+    @Test
+    void nullStringAndBytesRoundTrip()
+    {
+        AllTypes copy = roundTrip(new AllTypes(), AllTypes.class);
+        assertNull(copy.text);
+        assertNull(copy.data);
+        assertNull(copy.boxedInt);
+        assertNull(copy.boxedBoolean);
+    }
+
+    @Test
+    void rejectsByteArrayLengthBeyondBody()
+    {
+        //5 字节的变长长度声明约 2GB，不能按它分配数组
+        ByteBuf in = Unpooled.buffer();
+        VarInt.writeUnsignedInt(in, Integer.MAX_VALUE);
+        in.writeBytes(new byte[16]);
+        assertThrows(CorruptedFrameException.class, () -> BinarySchema.of(Blob.class).read(in));
+    }
+
+    @Test
+    void rejectsStringLengthBeyondBody()
+    {
+        ByteBuf in = Unpooled.buffer();
+        VarInt.writeUnsignedInt(in, 1 << 20);
+        in.writeBytes(new byte[16]);
+        assertThrows(CorruptedFrameException.class, () -> BinarySchema.of(Text.class).read(in));
+    }
+
+    @Test
+    void rejectsLengthThatOverflowsToNegative()
+    {
+        ByteBuf in = Unpooled.buffer();
+        //无符号 0xffffffff，减 1 之后是负数
+        VarInt.writeUnsignedInt(in, -1);
+        assertThrows(CorruptedFrameException.class, () -> BinarySchema.of(Blob.class).read(in));
+        in.readerIndex(0);
+        assertThrows(CorruptedFrameException.class, () -> BinarySchema.of(Text.class).read(in));
+    }
+
+    @Test
+    void rejectsTruncatedBody()
+    {
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("name");
+        helloRequestMessage.setBody("body");
+        ByteBuf buf = Unpooled.buffer();
+        BinarySchema.of(HelloRequestMessage.class).write(helloRequestMessage, buf);
+        for (int length = 0; length < buf.readableBytes(); length++)
+        {
+            ByteBuf truncated = buf.slice(0, length);
+            assertThrows(CorruptedFrameException.class,
+                    () -> BinarySchema.of(HelloRequestMessage.class).read(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsOverlongVarInt()
+    {
+        ByteBuf in = Unpooled.wrappedBuffer(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, 0x01});
+        assertThrows(CorruptedFrameException.class, () -> BinarySchema.of(Blob.class).read(in));
+    }
+
+    /**
+     * 序列化后再反序列化
+     *
+     * @param value 对象
+     * @param type  类型
+     * @return {@link T}
+     */
+    private static <T> T roundTrip(T value, Class<T> type)
+    {
+        ByteBuf buf = Unpooled.buffer();
+        SerializerAlgorithm.Binary.serialize(value, buf);
+        T copy = SerializerAlgorithm.Binary.deserialize(type, buf);
+        assertFalse(buf.isReadable(), "正文应该全部读完");
+        return copy;
+    }
+}
@@ -0,0 +1,206 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import mao.message.BatchMessage;
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+import mao.message.Message;
+import mao.message.PingMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): MessageCodecSharableTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 10:30
+ * Version(版本): 1.0
+ * Description(描述)： 编解码器：编码后再解码的往返，以及各种错误的帧被拒绝后不影响后面的帧
+ */
+
+class MessageCodecSharableTest
+{
+    /**
+     * Json 序列化器的 id
+     */
+    private static final int JSON = 1;
+
+    @Test
+    void batchRoundTrip()
+    {
+        PingMessage pingMessage = new PingMessage();
+        pingMessage.setTime(123);
+        pingMessage.setSequenceId(1);
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("张三");
+        helloRequestMessage.setBody("hello");
+        helloRequestMessage.setSequenceId(2);
+        HelloResponseMessage helloResponseMessage = HelloResponseMessage.success("你好");
+        helloResponseMessage.setSequenceId(3);
+
+        List<Object> decoded = decode(encode(new BatchMessage(new ArrayList<>(
+                Arrays.<Message>asList(pingMessage, helloRequestMessage, helloResponseMessage)))));
+
+        assertEquals(3, decoded.size());
+        PingMessage ping = (PingMessage) decoded.get(0);
+        assertEquals(1, ping.getSequenceId());
+        assertEquals(123, ping.getTime());
+        HelloRequestMessage request = (HelloRequestMessage) decoded.get(1);
+        assertEquals(2, request.getSequenceId());
+        assertEquals("张三", request.getName());
+        assertEquals("hello", request.getBody());
+        HelloResponseMessage response = (HelloResponseMessage) decoded.get(2);
+        assertEquals(3, response.getSequenceId());
+        assertEquals("你好", response.getBody());
+    }
+
+    @Test
+    void rejectsBatchCountThatOverflows()
+    {
+        //条数 * 3 会溢出成一个很小的数，不能按它分配表
+        ByteBuf body = Unpooled.buffer();
+        VarInt.writeUnsignedInt(body, 0x3FFFFFFF);
+        body.writeZero(16);
+        assertRejected(frame(JSON, Message.BatchMessage, 1, 0, body));
+    }
+
+    @Test
+    void rejectsNegativeBatchEntryLength()
+    {
+        ByteBuf body = Unpooled.buffer();
+        VarInt.writeUnsignedInt(body, 1);
+        body.writeByte(Message.PingMessage);
+        VarInt.writeInt(body, 1);
+        VarInt.writeUnsignedInt(body, -1);
+        body.writeZero(8);
+        assertRejected(frame(JSON, Message.BatchMessage, 1, 0, body));
+    }
+
+    @Test
+    void rejectsBatchEntriesLongerThanBody()
+    {
+        ByteBuf body = Unpooled.buffer();
+        VarInt.writeUnsignedInt(body, 2);
+        body.writeByte(Message.PingMessage);
+        VarInt.writeInt(body, 1);
+        VarInt.writeUnsignedInt(body, 4);
+        body.writeByte(Message.PingMessage);
+        VarInt.writeInt(body, 2);
+        VarInt.writeUnsignedInt(body, 100);
+        body.writeZero(8);
+        assertRejected(frame(JSON, Message.BatchMessage, 1, 0, body));
+    }
+
+    @Test
+    void rejectsNestedBatch()
+    {
+        ByteBuf body = Unpooled.buffer();
+        VarInt.writeUnsignedInt(body, 1);
+        body.writeByte(Message.BatchMessage);
+        VarInt.writeInt(body, 1);
+        VarInt.writeUnsignedInt(body, 1);
+        body.writeZero(1);
+        assertRejected(frame(JSON, Message.BatchMessage, 1, 0, body));
+    }
+
+    /**
+     * 编码，返回写出的所有字节
+     *
+     * @param messages 消息
+     * @return {@link ByteBuf}
+     */
+    static ByteBuf encode(Object... messages)
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageCodecSharable());
+        for (Object message : messages)
+        {
+            assertTrue(channel.writeOutbound(message));
+        }
+        ByteBuf out = Unpooled.buffer();
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null)
+        {
+            out.writeBytes(buf);
+            buf.release();
+        }
+        assertFalse(channel.finish());
+        return out;
+    }
+
+    /**
+     * 用帧解码器 + 编解码器解码，返回解码出的所有消息
+     *
+     * @param in 字节
+     * @return {@link List}<{@link Object}>
+     */
+    static List<Object> decode(ByteBuf in)
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+        channel.writeInbound(in);
+        List<Object> decoded = new ArrayList<>();
+        Object message;
+        while ((message = channel.readInbound()) != null)
+        {
+            decoded.add(message);
+        }
+        channel.finishAndReleaseAll();
+        return decoded;
+    }
+
+    /**
+     * 手工拼一个帧
+     *
+     * @param serializerId 序列化器 id
+     * @param messageType  消息类型
+     * @param sequenceId   序列号
+     * @param flags        标志字节
+     * @param body         正文
+     * @return {@link ByteBuf}
+     */
+    static ByteBuf frame(int serializerId, int messageType, int sequenceId, int flags, ByteBuf body)
+    {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(MessageCodecSharable.MAGIC_NUMBER);
+        frame.writeByte(MessageCodecSharable.VERSION);
+        frame.writeByte(serializerId);
+        frame.writeByte(messageType);
+        frame.writeInt(sequenceId);
+        frame.writeByte(flags);
+        frame.writeInt(body.readableBytes());
+        frame.writeBytes(body);
+        body.release();
+        return frame;
+    }
+
+    /**
+     * 错误的帧被拒绝，之后同一个连接上正常的帧照常解码
+     *
+     * @param bad 错误的帧
+     */
+    static void assertRejected(ByteBuf bad)
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+        assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(bad));
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("next");
+        helloRequestMessage.setSequenceId(9);
+        channel.writeInbound(encode(helloRequestMessage));
+        HelloRequestMessage decoded = channel.readInbound();
+        assertEquals("next", decoded.getName());
+        assertEquals(9, decoded.getSequenceId());
+        assertNull(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,136 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import mao.message.HelloRequestMessage;
+import mao.message.HelloResponseMessage;
+import mao.message.Message;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): MessageFrameDecoderTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 14:40
+ * Version(版本): 1.0
+ * Description(描述)： 合并的帧解码器：分多次到达的帧照常解码，魔数、版本、长度错误时不等收齐就关闭连接，
+ * 解码失败的帧只丢弃这一帧
+ */
+
+class MessageFrameDecoderTest
+{
+    @Test
+    void decodesFramesArrivingByteByByte()
+    {
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("张三");
+        helloRequestMessage.setBody("hello");
+        helloRequestMessage.setSequenceId(1);
+        HelloResponseMessage helloResponseMessage = HelloResponseMessage.success("你好");
+        helloResponseMessage.setSequenceId(2);
+        ByteBuf bytes = MessageCodecSharableTest.encode(helloRequestMessage, helloResponseMessage);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        while (bytes.isReadable())
+        {
+            channel.writeInbound(bytes.readRetainedSlice(1));
+        }
+        bytes.release();
+        HelloRequestMessage request = channel.readInbound();
+        assertEquals("张三", request.getName());
+        assertEquals("hello", request.getBody());
+        assertEquals(1, request.getSequenceId());
+        HelloResponseMessage response = channel.readInbound();
+        assertEquals("你好", response.getBody());
+        assertEquals(2, response.getSequenceId());
+        assertNull(channel.readInbound());
+        assertTrue(channel.isOpen());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void closesOnBadMagicBeforeHeaderArrives()
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        //第二个字节就不对，不等消息头收齐
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{0x01, 0x7f}));
+        assertFalse(channel.isOpen());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    void closesOnBadVersion()
+    {
+        ByteBuf prefix = Unpooled.buffer();
+        prefix.writeInt(MessageCodecSharable.MAGIC_NUMBER);
+        prefix.writeByte(MessageCodecSharable.VERSION + 1);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        channel.writeInbound(prefix);
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void closesOnNegativeLength()
+    {
+        ByteBuf frame = MessageCodecSharableTest.frame(1, Message.HelloRequestMessage, 1, 0, Unpooled.buffer());
+        frame.setInt(MessageCodecSharable.LENGTH_FIELD_OFFSET, -1);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        channel.writeInbound(frame);
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void closesOnTooLongFrameWithoutWaitingForBody()
+    {
+        ByteBuf header = MessageCodecSharableTest.frame(1, Message.HelloRequestMessage, 1, 0, Unpooled.buffer());
+        header.setInt(MessageCodecSharable.LENGTH_FIELD_OFFSET, 100);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder(64));
+        channel.writeInbound(header);
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void dataAfterRejectionIsDiscarded()
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("late");
+        ByteBuf bytes = Unpooled.buffer();
+        bytes.writeByte(0x7f);
+        bytes.writeBytes(MessageCodecSharableTest.encode(helloRequestMessage));
+        channel.writeInbound(bytes);
+        assertFalse(channel.isOpen());
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    void undecodableFrameIsSkippedAndNextFrameDecodes()
+    {
+        //未注册的序列化方式，帧本身的结构是对的
+        ByteBuf bad = MessageCodecSharableTest.frame(99, Message.HelloRequestMessage, 1, 0,
+                Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("next");
+        helloRequestMessage.setSequenceId(9);
+        ByteBuf bytes = Unpooled.buffer();
+        bytes.writeBytes(bad);
+        bad.release();
+        bytes.writeBytes(MessageCodecSharableTest.encode(helloRequestMessage));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageFrameDecoder());
+        assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(bytes));
+        HelloRequestMessage decoded = channel.readInbound();
+        assertEquals("next", decoded.getName());
+        assertEquals(9, decoded.getSequenceId());
+        assertTrue(channel.isOpen());
+        assertFalse(channel.finish());
+    }
+}
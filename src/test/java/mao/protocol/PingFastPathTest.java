@@ -0,0 +1,131 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import mao.handler.BackpressureHandler;
+import mao.handler.BackpressurePolicy;
+import mao.handler.HeartbeatHandler;
+import mao.message.HelloResponseMessage;
+import mao.message.Message;
+import mao.message.PingMessage;
+import mao.message.PongMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): PingFastPathTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 16:40
+ * Version(版本): 1.0
+ * Description(描述)： ping 的快速路径：改写消息头得到的 pong 带回序列号和时间，Java 序列化交给业务处理器，
+ * pong 从 pipeline 尾部写出，排在已经发起写的响应之后，并且算作一次写(不会再触发心跳 ping)
+ */
+
+class PingFastPathTest
+{
+    @Test
+    void pongCarriesSequenceIdAndTime()
+    {
+        for (SerializerAlgorithm algorithm : new SerializerAlgorithm[]{SerializerAlgorithm.Json, SerializerAlgorithm.Binary})
+        {
+            EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+            assertFalse(channel.writeInbound(ping(algorithm, 42, 1680000000000L)), algorithm.name());
+            List<Object> decoded = MessageCodecSharableTest.decode(channel.readOutbound());
+            assertEquals(1, decoded.size());
+            PongMessage pong = (PongMessage) decoded.get(0);
+            assertEquals(42, pong.getSequenceId(), algorithm.name());
+            assertEquals(1680000000000L, pong.getTime(), algorithm.name());
+            assertNull(channel.readOutbound());
+            assertFalse(channel.finish());
+        }
+    }
+
+    @Test
+    void javaSerializedPingGoesToHandler()
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+        assertTrue(channel.writeInbound(ping(SerializerAlgorithm.Java, 7, 123)));
+        PingMessage ping = channel.readInbound();
+        assertEquals(7, ping.getSequenceId());
+        assertEquals(123, ping.getTime());
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void pongQueuesBehindEarlierResponse()
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable(),
+                new BackpressureHandler(BackpressurePolicy.Queue, 16, 0, false));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        //对端没有读，响应在背压处理器中排队
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+        assertFalse(channel.isWritable());
+        HelloResponseMessage helloResponseMessage = HelloResponseMessage.success("first");
+        helloResponseMessage.setSequenceId(1);
+        channel.write(helloResponseMessage);
+        channel.writeInbound(ping(SerializerAlgorithm.Json, 2, 0));
+        channel.flush();
+
+        ByteBuf blocker = channel.readOutbound();
+        assertEquals(32, blocker.readableBytes());
+        blocker.release();
+        ByteBuf wire = Unpooled.buffer();
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null)
+        {
+            wire.writeBytes(buf);
+            buf.release();
+        }
+        List<Object> decoded = MessageCodecSharableTest.decode(wire);
+        assertEquals(2, decoded.size());
+        assertEquals(1, ((HelloResponseMessage) decoded.get(0)).getSequenceId());
+        assertEquals(2, ((PongMessage) decoded.get(1)).getSequenceId());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void pongCountsAsWriteForHeartbeat() throws InterruptedException
+    {
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable(),
+                new HeartbeatHandler(400, 0));
+        for (int i = 1; i <= 10; i++)
+        {
+            channel.writeInbound(ping(SerializerAlgorithm.Json, i, 0));
+            Thread.sleep(60);
+            channel.runPendingTasks();
+        }
+        //写出的全是 pong，心跳处理器没有因为写空闲再发 ping
+        for (int i = 1; i <= 10; i++)
+        {
+            ByteBuf frame = channel.readOutbound();
+            assertEquals(Message.PongMessage, frame.getByte(MessageCodecSharable.MESSAGE_TYPE_OFFSET));
+            assertEquals(i, frame.getInt(7));
+            frame.release();
+        }
+        assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    private static ByteBuf ping(SerializerAlgorithm algorithm, int sequenceId, long time)
+    {
+        PingMessage pingMessage = new PingMessage();
+        pingMessage.setSequenceId(sequenceId);
+        pingMessage.setTime(time);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageCodecSharable(algorithm));
+        assertTrue(channel.writeOutbound(pingMessage));
+        ByteBuf frame = channel.readOutbound();
+        assertFalse(channel.finish());
+        return frame;
+    }
+}
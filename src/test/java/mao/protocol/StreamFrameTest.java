@@ -0,0 +1,251 @@
+package mao.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import mao.config.ServerConfig;
+import mao.message.FileStreamMessage;
+import mao.message.HelloRequestMessage;
+import mao.message.Message;
+import mao.message.StreamChunkMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Project name(项目名称)：Netty_自定义协议
+ * Package(包名): mao.protocol
+ * Class(类名): StreamFrameTest
+ * Author(作者）: mao
+ * Author QQ：1296193245
+ * GitHub：https://github.com/maomao124/
+ * Date(创建日期)： 2023/4/9
+ * Time(创建时间)： 15:20
+ * Version(版本): 1.0
+ * Description(描述)： 续帧和文件流：大消息拆帧后拼接还原，不属于同一个消息的续帧和超长的续帧被拒绝，
+ * 文件流上一块写完才写下一块
+ */
+
+class StreamFrameTest
+{
+    /**
+     * Json 序列化器的 id
+     */
+    private static final int JSON = 1;
+
+    @Test
+    void largeMessageRoundTripsAsContinuationFrames()
+    {
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("张三");
+        helloRequestMessage.setBody(text(20000));
+        helloRequestMessage.setSequenceId(3);
+        ByteBuf bytes = MessageCodecSharableTest.encode(helloRequestMessage);
+        //整个消息超过默认的最大帧长度，只能拆成续帧
+        assertTrue(bytes.readableBytes() > ProcotolFrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+
+        EmbeddedChannel fused = new EmbeddedChannel(new MessageFrameDecoder());
+        fused.writeInbound(bytes.retainedDuplicate());
+        for (Object decoded : new Object[]{MessageCodecSharableTest.decode(bytes).get(0), fused.readInbound()})
+        {
+            HelloRequestMessage request = (HelloRequestMessage) decoded;
+            assertEquals(3, request.getSequenceId());
+            assertEquals("张三", request.getName());
+            assertEquals(helloRequestMessage.getBody(), request.getBody());
+        }
+        assertFalse(fused.finish());
+    }
+
+    @Test
+    void rejectsContinuationOfDifferentMessage()
+    {
+        ByteBuf bytes = Unpooled.buffer();
+        bytes.writeBytes(MessageCodecSharableTest.frame(JSON, Message.HelloRequestMessage, 1,
+                MessageCodecSharable.FLAG_MORE, Unpooled.copiedBuffer("{", StandardCharsets.UTF_8)));
+        bytes.writeBytes(MessageCodecSharableTest.frame(JSON, Message.HelloResponseMessage, 1, 0,
+                Unpooled.copiedBuffer("}", StandardCharsets.UTF_8)));
+        MessageCodecSharableTest.assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsContinuationWithDifferentSequenceId()
+    {
+        ByteBuf bytes = Unpooled.buffer();
+        bytes.writeBytes(MessageCodecSharableTest.frame(JSON, Message.HelloRequestMessage, 1,
+                MessageCodecSharable.FLAG_MORE, Unpooled.copiedBuffer("{", StandardCharsets.UTF_8)));
+        bytes.writeBytes(MessageCodecSharableTest.frame(JSON, Message.HelloRequestMessage, 2, 0,
+                Unpooled.copiedBuffer("}", StandardCharsets.UTF_8)));
+        MessageCodecSharableTest.assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsContinuationLongerThanMaxLength()
+    {
+        int chunkSize = ServerConfig.getStreamChunkSize();
+        EmbeddedChannel channel = new EmbeddedChannel(new ProcotolFrameDecoder(), new MessageCodecSharable());
+        byte[] chunk = new byte[chunkSize];
+        //最后一帧使拼接的长度超过上限
+        int frames = ServerConfig.getStreamMaxLength() / chunkSize + 1;
+        for (int i = 1; i < frames; i++)
+        {
+            channel.writeInbound(MessageCodecSharableTest.frame(JSON, Message.HelloRequestMessage, 1,
+                    MessageCodecSharable.FLAG_MORE, Unpooled.wrappedBuffer(chunk)));
+        }
+        ByteBuf last = MessageCodecSharableTest.frame(JSON, Message.HelloRequestMessage, 1,
+                MessageCodecSharable.FLAG_MORE, Unpooled.wrappedBuffer(chunk));
+        assertThrows(TooLongFrameException.class, () -> channel.writeInbound(last));
+        //丢掉拼接到一半的消息，后面的消息照常解码
+        HelloRequestMessage helloRequestMessage = new HelloRequestMessage();
+        helloRequestMessage.setName("next");
+        channel.writeInbound(MessageCodecSharableTest.encode(helloRequestMessage));
+        HelloRequestMessage decoded = channel.readInbound();
+        assertEquals("next", decoded.getName());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void fileStreamWritesNextChunkOnlyAfterPreviousCompletes(@TempDir Path dir) throws IOException
+    {
+        byte[] content = new byte[10000];
+        new Random(1).nextBytes(content);
+        Path file = dir.resolve("data");
+        Files.write(file, content);
+        List<ChannelPromise> held = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(holdFileRegions(held), new MessageCodecSharable());
+        FileStreamMessage message = new FileStreamMessage(7, file.toFile());
+        ChannelFuture future = channel.writeAndFlush(message);
+
+        ByteBuf wire = Unpooled.buffer();
+        ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+        boolean more = true;
+        int chunks = 0;
+        while (more)
+        {
+            //出站缓冲区中只有当前这一块
+            ByteBuf header = channel.readOutbound();
+            FileRegion region = channel.readOutbound();
+            assertNull(channel.readOutbound());
+            chunks++;
+            assertEquals(chunks, held.size());
+            assertEquals(Message.StreamChunkMessage, header.getByte(MessageCodecSharable.MESSAGE_TYPE_OFFSET));
+            assertEquals(region.count(), header.getInt(MessageCodecSharable.LENGTH_FIELD_OFFSET));
+            more = (header.getByte(MessageCodecSharable.FLAGS_OFFSET) & MessageCodecSharable.FLAG_MORE) != 0;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            region.transferTo(Channels.newChannel(body), 0);
+            wire.writeBytes(header);
+            wire.writeBytes(body.toByteArray());
+            bodies.write(body.toByteArray());
+            header.release();
+            region.release();
+            assertFalse(future.isDone());
+            held.get(chunks - 1).setSuccess();
+        }
+        assertTrue(future.isSuccess());
+        int chunkSize = ServerConfig.getStreamFileChunkSize();
+        assertEquals((content.length + chunkSize - 1) / chunkSize, chunks);
+        assertArrayEquals(content, bodies.toByteArray());
+        assertEquals(0, message.refCnt());
+        assertFalse(channel.finish());
+
+        //接收端收到的是同一个流 id 的数据块，最后一块带结束标志
+        List<Object> decoded = MessageCodecSharableTest.decode(wire);
+        assertEquals(chunks, decoded.size());
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        for (int i = 0; i < decoded.size(); i++)
+        {
+            StreamChunkMessage chunk = (StreamChunkMessage) decoded.get(i);
+            assertEquals(7, chunk.getStreamId());
+            assertEquals(i == decoded.size() - 1, chunk.isLast());
+            chunk.getContent().readBytes(received, chunk.getContent().readableBytes());
+            chunk.release();
+        }
+        assertArrayEquals(content, received.toByteArray());
+    }
+
+    @Test
+    void fileStreamFailsWhenChunkWriteFails(@TempDir Path dir) throws IOException
+    {
+        Path file = dir.resolve("data");
+        Files.write(file, new byte[10000]);
+        List<ChannelPromise> held = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(holdFileRegions(held), new MessageCodecSharable());
+        FileStreamMessage message = new FileStreamMessage(7, file.toFile());
+        ChannelFuture future = channel.writeAndFlush(message);
+        IOException cause = new IOException("broken pipe");
+        held.get(0).setFailure(cause);
+        assertSame(cause, future.cause());
+        //没有继续写后面的块
+        assertEquals(1, held.size());
+        channel.finishAndReleaseAll();
+        assertEquals(0, message.refCnt());
+    }
+
+    @Test
+    void emptyFileStreamWritesOneLastChunk(@TempDir Path dir) throws IOException
+    {
+        Path file = dir.resolve("empty");
+        Files.write(file, new byte[0]);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageCodecSharable());
+        FileStreamMessage message = new FileStreamMessage(7, file.toFile());
+        assertTrue(channel.writeAndFlush(message).isSuccess());
+        ByteBuf header = channel.readOutbound();
+        assertEquals(0, header.getInt(MessageCodecSharable.LENGTH_FIELD_OFFSET));
+        assertEquals(0, header.getByte(MessageCodecSharable.FLAGS_OFFSET) & MessageCodecSharable.FLAG_MORE);
+        header.release();
+        assertNull(channel.readOutbound());
+        assertEquals(0, message.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    /**
+     * FileRegion 的写操作先不完成，由测试决定什么时候完成，相当于 socket 缓冲区满了
+     *
+     * @param held 没有完成的 promise
+     * @return {@link ChannelOutboundHandlerAdapter}
+     */
+    private static ChannelOutboundHandlerAdapter holdFileRegions(List<ChannelPromise> held)
+    {
+        return new ChannelOutboundHandlerAdapter()
+        {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            {
+                if (msg instanceof FileRegion)
+                {
+                    held.add(promise);
+                    ctx.write(msg);
+                    return;
+                }
+                ctx.write(msg, promise);
+            }
+        };
+    }
+
+    private static String text(int length)
+    {
+        StringBuilder builder = new StringBuilder(length);
+        Random random = new Random(2);
+        for (int i = 0; i < length; i++)
+        {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}